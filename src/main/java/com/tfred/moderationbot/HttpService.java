@@ -0,0 +1,254 @@
+package com.tfred.moderationbot;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The http client for all requests to other APIs (Mojang, leaderboards).
+ * <p>
+ * All requests share one async client that is started on first use, so connections are pooled and kept alive between requests.
+ * Every host gets at most HTTP_MAX_CONNECTIONS_PER_HOST connections (environment variable, 16 by default), further requests
+ * wait for a free connection. The timeouts are set with HTTP_CONNECT_TIMEOUT_MS (5000 by default) and HTTP_READ_TIMEOUT_MS
+ * (10000 by default) and the User-Agent header with HTTP_USER_AGENT.
+ */
+public class HttpService {
+    private static final int MAX_CONNECTIONS_PER_HOST = configuredInt("HTTP_MAX_CONNECTIONS_PER_HOST", 16);
+    private static final int CONNECT_TIMEOUT = configuredInt("HTTP_CONNECT_TIMEOUT_MS", 5000);
+    private static final int READ_TIMEOUT = configuredInt("HTTP_READ_TIMEOUT_MS", 10000);
+    // How long a request waits for a free connection of its host.
+    private static final int CONNECTION_REQUEST_TIMEOUT = 60000;
+    private static final String USER_AGENT = System.getenv("HTTP_USER_AGENT") == null ? "ModerationBot (https://github.com/Freeder1k/ModerationBot)" : System.getenv("HTTP_USER_AGENT");
+
+    private static final ConcurrentHashMap<String, HostStats> hostStats = new ConcurrentHashMap<>();
+    private static CloseableHttpAsyncClient client;
+
+    private static int configuredInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid " + name + " \"" + value + "\"! Using " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
+    @Nonnull
+    private static synchronized CloseableHttpAsyncClient client() {
+        if (client == null) {
+            client = HttpAsyncClients.custom()
+                    .setMaxConnPerRoute(MAX_CONNECTIONS_PER_HOST)
+                    .setMaxConnTotal(MAX_CONNECTIONS_PER_HOST * 4)
+                    .setUserAgent(USER_AGENT)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(CONNECT_TIMEOUT)
+                            .setSocketTimeout(READ_TIMEOUT)
+                            .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+                            .build())
+                    .setThreadFactory(r -> {
+                        Thread thread = new Thread(r, "HttpService");
+                        thread.setDaemon(true);
+                        return thread;
+                    })
+                    .build();
+            client.start();
+        }
+        return client;
+    }
+
+    /**
+     * Close the client and all its connections. A later request starts a new one.
+     */
+    public static synchronized void shutdown() {
+        if (client == null)
+            return;
+        try {
+            client.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        client = null;
+    }
+
+    /**
+     * Send a GET request.
+     *
+     * @param url The url.
+     * @return A future that completes with the response or exceptionally with an {@link IOException} if the request failed.
+     */
+    @Nonnull
+    public static CompletableFuture<Response> getAsync(@Nonnull String url) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        HttpGet request;
+        try {
+            request = new HttpGet(url);
+        } catch (IllegalArgumentException e) {
+            future.completeExceptionally(new IOException("Invalid url: " + url, e));
+            return future;
+        }
+
+        HostStats stats = hostStats.computeIfAbsent(host(request.getURI()), k -> new HostStats());
+        stats.inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        client().execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                String body;
+                try {
+                    body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+                } catch (IOException e) {
+                    failed(e);
+                    return;
+                }
+                stats.finished(start, false);
+                future.complete(new Response(response.getStatusLine().getStatusCode(), body, response.getAllHeaders()));
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                stats.finished(start, true);
+                future.completeExceptionally(ex instanceof IOException ? ex : new IOException(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                stats.finished(start, true);
+                future.completeExceptionally(new IOException("Request cancelled: " + url));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send a GET request and wait for the response.
+     *
+     * @param url The url.
+     * @return The response.
+     * @throws IOException If the request failed or the thread got interrupted.
+     */
+    @Nonnull
+    public static Response get(@Nonnull String url) throws IOException {
+        return await(getAsync(url));
+    }
+
+    /**
+     * Wait for the response of {@link #getAsync(String)}.
+     *
+     * @throws IOException If the request failed or the thread got interrupted.
+     */
+    @Nonnull
+    public static Response await(@Nonnull CompletableFuture<Response> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static String host(URI uri) {
+        return uri.getHost() == null ? "unknown" : uri.getHost();
+    }
+
+    /**
+     * @return The statistics of every host a request was sent to, sorted by host.
+     */
+    @Nonnull
+    public static Map<String, HostStats> getHostStats() {
+        return new TreeMap<>(hostStats);
+    }
+
+    /**
+     * A finished request. The body is read completely, so the connection is already back in the pool.
+     */
+    public static class Response {
+        public final int status;
+        public final String body;
+        private final Header[] headers;
+
+        Response(int status, @Nonnull String body, @Nonnull Header[] headers) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        /**
+         * @return The value of the first header with that name or null if the response doesn't have one.
+         */
+        @Nullable
+        public String getHeader(@Nonnull String name) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name))
+                    return header.getValue();
+            }
+            return null;
+        }
+    }
+
+    public static class HostStats {
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder time = new LongAdder();
+
+        private void finished(long start, boolean failed) {
+            inFlight.decrementAndGet();
+            requestCount.increment();
+            if (failed)
+                failedCount.increment();
+            time.add(System.nanoTime() - start);
+        }
+
+        /**
+         * @return The amount of requests that haven't finished yet.
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return The amount of finished requests, including failed ones.
+         */
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        /**
+         * @return The amount of requests that failed without a response.
+         */
+        public long getFailedCount() {
+            return failedCount.sum();
+        }
+
+        /**
+         * @return The average time a request took in milliseconds, including the wait for a free connection.
+         */
+        public double getAverageMillis() {
+            long count = requestCount.sum();
+            return count == 0 ? 0 : time.sum() / 1000000. / count;
+        }
+    }
+}
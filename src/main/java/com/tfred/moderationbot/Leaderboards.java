@@ -9,15 +9,15 @@ import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -25,11 +25,18 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 //TODO store latest data in json format
 public class Leaderboards {
     private static final Path path = Paths.get("leaderboards.data");
+    private static final Path CACHE_DIR = Paths.get("lbcache");
+    // Leaderboards are only fetched for the current week, older responses aren't needed anymore.
+    private static final long CACHE_MAX_AGE = 3 * 604800000L;
+    // The amount of spots shown of every leaderboard.
+    private static final int BOARD_SIZE = 50;
     private static long date = 0; // Date of the latest leaderboard in milliseconds
     private static List<LbSpot> hiderLb = new ArrayList<>(50);
     private static List<LbSpot> hunterLb = new ArrayList<>(50);
@@ -84,45 +91,47 @@ public class Leaderboards {
             }.getType();
 
             hiderLb = new Gson().fromJson(leaderboard[0], listType);
-            hiderLb = hiderLb.subList(0, 50);
+            hiderLb = hiderLb.subList(0, BOARD_SIZE);
             hunterLb = new Gson().fromJson(leaderboard[1], listType);
-            hunterLb = hunterLb.subList(0, 50);
+            hunterLb = hunterLb.subList(0, BOARD_SIZE);
             killsLb = new Gson().fromJson(leaderboard[2], listType);
-            killsLb = killsLb.subList(0, 50);
-        } catch (JsonSyntaxException e) {
+            killsLb = killsLb.subList(0, BOARD_SIZE);
+        } catch (JsonSyntaxException | IndexOutOfBoundsException e) {
             throw new LeaderboardFetchFailedException(e.getMessage());
         }
     }
 
+    /**
+     * Get the entries of all three leaderboards. The requests are sent at the same time and the responses get cached in
+     * {@link #CACHE_DIR}. Saved leaderboards never change, so a cached save time never gets requested again.
+     * Only responses with at least {@link #BOARD_SIZE} entries are used and cached, a cached response with less gets requested again.
+     */
     private static JsonElement[] getJsonLbData(long date2) throws LeaderboardFetchFailedException {
         JsonElement[] data = new JsonElement[3];
+        String[] lbUrls = lbURLs(date2);
+        List<CompletableFuture<HttpService.Response>> requests = new ArrayList<>(3);
+        for (int i = 0; i < 3; i++) {
+            String cached = readCachedResponse(lbUrls[i]);
+            data[i] = cached == null ? null : entries(cached);
+            requests.add(data[i] == null ? HttpService.getAsync(lbUrls[i]) : null);
+        }
+
         try {
-            String[] lbUrls = lbURLs(date2);
             for (int i = 0; i < 3; i++) {
-                URL urlForGetRequest = new URL(lbUrls[i]);
-
-                HttpURLConnection connection = (HttpURLConnection) urlForGetRequest.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0 (compatible; Rigor/1.0.0; http://rigor.com)");
-                connection.connect();
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                    String response = in.readLine();
-                    in.close();
-
-                    JsonObject jsonObject = JsonParser.parseString(response).getAsJsonObject();
-
-                    data[i] = jsonObject.get("entries");
-                    if (data[i] == null) {
-                        System.out.println("Leaderboard null! Url: " + lbUrls[i] + "\nServer response: " + response);
-                        throw new LeaderboardFetchFailedException("Leaderboard null! Url: " + lbUrls[i] + "\nServer response: " + response);
-                    }
-                } else {
-                    System.out.println("Http error when fetching leaderboard: " + responseCode + lbUrls[i]);
-                    throw new LeaderboardFetchFailedException("Http error when fetching leaderboard: " + responseCode + lbUrls[i]);
+                if (data[i] != null)
+                    continue;
+                HttpService.Response response = HttpService.await(requests.get(i));
+                if (response.status != HttpURLConnection.HTTP_OK) {
+                    System.out.println("Http error when fetching leaderboard: " + response.status + lbUrls[i]);
+                    throw new LeaderboardFetchFailedException("Http error when fetching leaderboard: " + response.status + lbUrls[i]);
                 }
+
+                data[i] = entries(response.body);
+                if (data[i] == null) {
+                    System.out.println("Leaderboard missing or incomplete! Url: " + lbUrls[i] + "\nServer response: " + response.body);
+                    throw new LeaderboardFetchFailedException("Leaderboard missing or incomplete! Url: " + lbUrls[i] + "\nServer response: " + response.body);
+                }
+                cacheResponse(lbUrls[i], response.body);
             }
         } catch (IOException e) {
             System.out.println("IO Error when fetching leaderboards!");
@@ -131,6 +140,62 @@ public class Leaderboards {
         return data;
     }
 
+    /**
+     * @return The entries of a leaderboard response or null if the response has no entries or less than {@link #BOARD_SIZE}.
+     */
+    private static JsonArray entries(String response) {
+        try {
+            JsonElement entries = JsonParser.parseString(response).getAsJsonObject().get("entries");
+            if (entries == null || !entries.isJsonArray() || entries.getAsJsonArray().size() < BOARD_SIZE)
+                return null;
+            return entries.getAsJsonArray();
+        } catch (JsonParseException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static Path cachePath(String url) {
+        return CACHE_DIR.resolve(UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    /**
+     * @return The cached response of a leaderboard url or null if it isn't cached.
+     */
+    private static String readCachedResponse(String url) {
+        Path cachePath = cachePath(url);
+        if (!Files.exists(cachePath))
+            return null;
+        try {
+            return new String(Files.readAllBytes(cachePath), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("IO error when reading cached leaderboard! " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cache the response of a leaderboard url and delete cached responses that are too old to be used again.
+     */
+    private static void cacheResponse(String url, String response) {
+        try {
+            Files.createDirectories(CACHE_DIR);
+            Path cachePath = cachePath(url);
+            Path temp = Paths.get(cachePath + ".tmp");
+            Files.write(temp, response.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long oldest = System.currentTimeMillis() - CACHE_MAX_AGE;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(CACHE_DIR)) {
+                for (Path file : files) {
+                    if (Files.getLastModifiedTime(file).toMillis() < oldest)
+                        Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("IO error when caching leaderboard! " + e.getMessage());
+        }
+    }
+
     private static void lbListSetChanges(String[] data) {
         List<String> uuidsold = new ArrayList<>();
         Collections.addAll(uuidsold, data);
@@ -284,16 +349,13 @@ public class Leaderboards {
                 throw new IllegalArgumentException("board must be in range 0-2");
         }
 
-        List<String> savedUuids = null;
         UsernameHandler usernameHandler = null;
 
         boolean noMentions = false;
         if (guildID == 0)
             noMentions = true;
-        else {
+        else
             usernameHandler = UsernameHandler.get(guildID);
-            savedUuids = usernameHandler.getSavedUuids();
-        }
 
         List<String> output = new ArrayList<>(5);
         StringBuilder temp = new StringBuilder();
@@ -302,9 +364,9 @@ public class Leaderboards {
         for (LbSpot s : lb) {
             String userID = "";
             if (!noMentions) {
-                String uuid = s.getUuid().replace("-", "");
-                if (savedUuids.contains(uuid))
-                    userID = String.valueOf(usernameHandler.getUserID(uuid));
+                long id = usernameHandler.getUserID(s.getUuid().replace("-", ""));
+                if (id != 0)
+                    userID = String.valueOf(id);
             }
 
             temp.append(s.toString(userID));
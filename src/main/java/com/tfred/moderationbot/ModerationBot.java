@@ -3,6 +3,7 @@ package com.tfred.moderationbot;
 import com.tfred.moderationbot.commands.*;
 import com.tfred.moderationbot.moderation.ModerationListener;
 import com.tfred.moderationbot.moderation.PunishmentScheduler;
+import com.tfred.moderationbot.usernames.NameCache;
 import com.tfred.moderationbot.usernames.UsernameHandler;
 import com.tfred.moderationbot.usernames.UsernameListener;
 import net.dv8tion.jda.api.JDA;
@@ -55,6 +56,9 @@ public class ModerationBot extends ListenerAdapter {
             System.out.println("[ModerationBot] ERROR - Failed to initialize leaderboards data! " + e.getMessage());
         }
 
+        NameCache.load();
+        System.out.println("[ModerationBot] INFO - Loaded " + NameCache.size() + " cached minecraft names.");
+
 
         commandListener.addCommand(new HelpCommand(commandListener))
                 .addCommand(new ConfigCommand())
@@ -75,7 +79,7 @@ public class ModerationBot extends ListenerAdapter {
                 .addCommand(new IpCommand())
                 .addCommand(new EmbedtestCommand())
                 .addCommand(new ShutdownCommand())
-                .addCommand(new MemCommand())
+                .addCommand(new MemCommand(commandListener))
                 .addCommand(new MuteCommand())
                 .addCommand(new BanCommand())
                 .addCommand(new ChannelBanCommand())
@@ -219,6 +223,10 @@ public class ModerationBot extends ListenerAdapter {
     @Override
     public void onShutdown(@Nonnull ShutdownEvent event) {
         scheduler.shutdownNow();
+        commandListener.executor.shutdown();
+        ServerData.flushAll();
+        NameCache.flush();
+        HttpService.shutdown();
         System.out.println("\n\nSHUTDOWN\n\n");
     }
 
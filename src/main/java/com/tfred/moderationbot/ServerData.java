@@ -1,22 +1,70 @@
 package com.tfred.moderationbot;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.MapMaker;
 import org.apache.commons.text.StringEscapeUtils;
 
 import java.io.IOException;
-import java.lang.ref.SoftReference;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * The configuration of a guild stored in serverdata/guildID.serverdata.
+ * <p>
+ * Loaded server data is kept in a cache with at most {@link #CACHE_SIZE} guilds, which can be set with the
+ * SERVERDATA_CACHE_SIZE environment variable. The least recently used guilds get evicted first.
+ * There is never more than one instance per guild: as long as an evicted instance is still used somewhere
+ * (or has unwritten changes) loading that guild again returns the same instance instead of reading the file.
+ * <p>
+ * Changes aren't written immediately. The server data gets marked as dirty and is written by a background thread
+ * after {@link #FLUSH_DELAY} seconds, so multiple changes in a short time only cause one write. Pending changes
+ * get written by {@link #flushAll()} when the bot shuts down. Files are always written to a temporary file first
+ * and then moved over the old one so a crash while writing can't leave a partial file behind.
+ * <p>
+ * Punishment IDs are reserved in blocks of {@link #PUNISHMENT_ID_BLOCK}. Only the end of the reserved block is stored
+ * and it is written to disk before any ID of a new block gets issued, so an ID can't be issued twice even if the bot
+ * crashes before the next flush. After a crash the rest of the last block is skipped.
+ * IDs are taken from the reserved block without locking or touching the disk. Once half of a block is used
+ * the next one gets reserved in the background, so only running out of IDs faster than that has to wait for a write.
+ */
 public class ServerData {
-    private static final HashMap<Long, SoftReference<ServerData>> allServerData = new HashMap<>();
-    private static final HashMap<Long, Set<Long>> allServerModRoles = new HashMap<>();
+    private static final int CACHE_SIZE = configuredCacheSize();
+    // All instances that are still reachable, including the ones evicted from the cache.
+    private static final ConcurrentMap<Long, ServerData> liveServerData = new MapMaker().weakValues().makeMap();
+    private static final AtomicLong revivedCount = new AtomicLong(0);
+    private static final LoadingCache<Long, ServerData> allServerData = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .recordStats()
+            .build(CacheLoader.from(ServerData::load));
+    private static final long FLUSH_DELAY = 2;
+    private static final int PUNISHMENT_ID_BLOCK = 100;
+    // Dirty server data is kept here until it's written so it can't get garbage collected before.
+    private static final Set<ServerData> dirtyServerData = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ServerData flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ServerData::flushAll));
+    }
 
     public final long guildID;
     private final long[][] lbMessages = new long[][]{{0, 0}, {0, 0}, {0, 0}}; //channelID:messageID x3
-    private Set<Long> modRoles;
+    // Sorted so checking a role is a binary search. This array never changes, a new one gets set instead.
+    private volatile long[] modRoles = new long[0];
     private long memberRole = 0;
     private long mutedRole = 0;
     private long noNicknameRole = 0;
@@ -25,7 +73,10 @@ public class ServerData {
     private long punishmentChannel = 0;
     private long joinMsgChannel = 0;
     private long nameChannel = 0;
-    private int currentPunishmentID = 0;
+    // The end of the reserved block in the upper and the last issued ID in the lower 32 bits, so both can be changed together.
+    private final AtomicLong punishmentIDs = new AtomicLong(0);
+    // The end of the reserved block that is written to the file. This is never lower than the one in punishmentIDs.
+    private int storedPunishmentID = 0;
     private String joinMsg = "";
 
     private ServerData(long guildID) {
@@ -53,15 +104,12 @@ public class ServerData {
                     System.out.println("Formatting error in " + guildID + ".serverdata!");
                 }
 
-                modRoles = allServerModRoles.get(guildID);
-                if (modRoles == null) {
-                    modRoles = Collections.synchronizedSet(new HashSet<>(4));
-                    for (String id : lines.get(1).split(" ")) {
-                        if (!id.equals(""))
-                            modRoles.add(Long.parseLong(id));
-                    }
-                    allServerModRoles.put(guildID, modRoles);
-                }
+                modRoles = Arrays.stream(lines.get(1).split(" "))
+                        .filter(id -> !id.equals(""))
+                        .mapToLong(Long::parseLong)
+                        .sorted()
+                        .distinct()
+                        .toArray();
 
                 memberRole = Long.parseLong(lines.get(2));
 
@@ -79,7 +127,9 @@ public class ServerData {
 
                 nameChannel = Long.parseLong(lines.get(9));
 
-                currentPunishmentID = Integer.parseInt(lines.get(10));
+                // The IDs up to the end of the reserved block might have been issued already.
+                storedPunishmentID = Integer.parseInt(lines.get(10));
+                punishmentIDs.set(packPunishmentIDs(storedPunishmentID, storedPunishmentID));
 
                 joinMsg = StringEscapeUtils.unescapeJava(lines.get(11));
             } catch (IndexOutOfBoundsException e) {/*this can be ignored*/} catch (NumberFormatException e) {
@@ -87,7 +137,6 @@ public class ServerData {
                 e.printStackTrace();
             }
         } else {
-            modRoles = Collections.synchronizedSet(new HashSet<>(4));
             if (!Files.isDirectory(Paths.get("serverdata"))) {
                 try {
                     Files.createDirectory(Paths.get("serverdata"));
@@ -110,67 +159,214 @@ public class ServerData {
      * @return The server data.
      */
     public static ServerData get(long guildID) {
-        if (allServerData.containsKey(guildID)) {
-            ServerData serverData = allServerData.get(guildID).get();
-            if (serverData != null)
-                return serverData;
+        return allServerData.getUnchecked(guildID);
+    }
+
+    /**
+     * Load the server data of a guild that isn't in the cache. This is only called by the cache, which makes sure
+     * it's never called twice at the same time for the same guild.
+     */
+    private static ServerData load(long guildID) {
+        ServerData serverData = liveServerData.get(guildID);
+        if (serverData != null) {
+            revivedCount.incrementAndGet();
+            return serverData;
         }
-        synchronized (ServerData.class) {
-            if (allServerData.containsKey(guildID)) {
-                ServerData serverData = allServerData.get(guildID).get();
-                if (serverData != null)
-                    return serverData;
+        serverData = new ServerData(guildID);
+        liveServerData.put(guildID, serverData);
+        return serverData;
+    }
+
+    private static int configuredCacheSize() {
+        String size = System.getenv("SERVERDATA_CACHE_SIZE");
+        if (size != null) {
+            try {
+                return Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid SERVERDATA_CACHE_SIZE \"" + size + "\"! Using 1000.");
             }
-            ServerData newSD = new ServerData(guildID);
-            allServerData.put(guildID, new SoftReference<>(newSD));
-            return newSD;
+        }
+        return 1000;
+    }
+
+    /**
+     * Get the statistics of the server data cache.
+     *
+     * @return The hits, misses, loads and evictions of the cache.
+     */
+    public static CacheStats getCacheStats() {
+        return allServerData.stats();
+    }
+
+    /**
+     * @return The amount of guilds in the server data cache.
+     */
+    public static long getCacheSize() {
+        return allServerData.size();
+    }
+
+    /**
+     * @return How many loads returned an evicted instance that was still in use instead of reading the file.
+     */
+    public static long getRevivedCount() {
+        return revivedCount.get();
+    }
+
+    /**
+     * Write all pending changes of all server data to disk and release the unused punishment IDs of the reserved blocks.
+     * This gets called when the bot shuts down.
+     */
+    public static void flushAll() {
+        for (ServerData serverData : liveServerData.values())
+            serverData.releasePunishmentIDs();
+        for (ServerData serverData : dirtyServerData.toArray(new ServerData[0]))
+            serverData.flush();
+    }
+
+    /**
+     * Mark this server data as changed. It gets written to disk after {@link #FLUSH_DELAY} seconds.
+     */
+    private void markDirty() {
+        if (dirtyServerData.add(this))
+            flusher.schedule(this::flush, FLUSH_DELAY, TimeUnit.SECONDS);
+    }
+
+    private void flush() {
+        // Changes made while writing mark the server data as dirty again and schedule another flush.
+        if (!dirtyServerData.remove(this))
+            return;
+        try {
+            writeFile(false);
+        } catch (IOException e) {
+            System.out.println("IO error when updating server data! " + e.getMessage());
+            markDirty();
         }
     }
 
-    public static Set<Long> getModRoles(long guildID) {
-        Set<Long> roles = allServerModRoles.get(guildID);
-        if (roles != null)
-            return Collections.unmodifiableSet(roles);
+    /**
+     * Write the server data to a temporary file and move it over the old one.
+     *
+     * @param sync Whether the data should be forced to the storage device before the file gets replaced.
+     */
+    private synchronized void writeFile(boolean sync) throws IOException {
+        List<String> lines = new ArrayList<>(12);
+        lines.add(String.valueOf(lbMessages[0][0]) + ':' + lbMessages[0][1] + ' ' +
+                lbMessages[1][0] + ':' + lbMessages[1][1] + ' ' +
+                lbMessages[2][0] + ':' + lbMessages[2][1]);
+        lines.add(Arrays.stream(modRoles).mapToObj(String::valueOf).collect(Collectors.joining(" ")));
+        lines.add(String.valueOf(memberRole));
+        lines.add(String.valueOf(mutedRole));
+        lines.add(String.valueOf(noNicknameRole));
+        lines.add(String.valueOf(logChannel));
+        lines.add(String.valueOf(joinChannel));
+        lines.add(String.valueOf(punishmentChannel));
+        lines.add(String.valueOf(joinMsgChannel));
+        lines.add(String.valueOf(nameChannel));
+        lines.add(String.valueOf(storedPunishmentID));
+        lines.add(StringEscapeUtils.escapeJava(joinMsg));
+
+        Path path = Paths.get("serverdata/" + guildID + ".serverdata");
+        Path temp = Paths.get(path + ".tmp");
+        Files.write(temp, lines);
+        if (sync) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-        return ServerData.get(guildID).getModRoles();
+    /**
+     * Give back the punishment IDs of the reserved block that weren't issued so there is no gap after a restart.
+     */
+    private synchronized void releasePunishmentIDs() {
+        long ids = punishmentIDs.get();
+        // Lower the end of the reserved block first so no ID above the stored one can be issued anymore.
+        while (reservedPunishmentID(ids) != currentPunishmentID(ids)) {
+            if (punishmentIDs.compareAndSet(ids, packPunishmentIDs(currentPunishmentID(ids), currentPunishmentID(ids)))) {
+                storedPunishmentID = currentPunishmentID(ids);
+                markDirty();
+                return;
+            }
+            ids = punishmentIDs.get();
+        }
     }
 
-    private synchronized void updateFile() {
+    /**
+     * Reserve the next block of punishment IDs unless more than half of the current block is left.
+     * The new block is written to disk before any ID of it can be issued.
+     */
+    private synchronized void reservePunishmentIDs() throws IOException {
+        long ids = punishmentIDs.get();
+        if (reservedPunishmentID(ids) - currentPunishmentID(ids) > PUNISHMENT_ID_BLOCK / 2)
+            return;
+
+        int oldStored = storedPunishmentID;
+        int reserved = Math.max(storedPunishmentID, reservedPunishmentID(ids) + PUNISHMENT_ID_BLOCK);
+        storedPunishmentID = reserved;
         try {
-            List<String> lines = new ArrayList<>(11);
-            lines.add(String.valueOf(lbMessages[0][0]) + ':' + lbMessages[0][1] + ' ' +
-                    lbMessages[1][0] + ':' + lbMessages[1][1] + ' ' +
-                    lbMessages[2][0] + ':' + lbMessages[2][1]);
-            lines.add(modRoles.stream().map(Object::toString).collect(Collectors.joining(" ")));
-            lines.add(String.valueOf(memberRole));
-            lines.add(String.valueOf(mutedRole));
-            lines.add(String.valueOf(noNicknameRole));
-            lines.add(String.valueOf(logChannel));
-            lines.add(String.valueOf(joinChannel));
-            lines.add(String.valueOf(punishmentChannel));
-            lines.add(String.valueOf(joinMsgChannel));
-            lines.add(String.valueOf(nameChannel));
-            lines.add(String.valueOf(currentPunishmentID));
-            lines.add(StringEscapeUtils.escapeJava(joinMsg));
-
-            Files.write(Paths.get("serverdata/" + guildID + ".serverdata"), lines);
+            writeFile(true);
         } catch (IOException e) {
-            System.out.println("IO error when updating server data!");
+            storedPunishmentID = oldStored;
+            throw e;
         }
+        // Only issuing IDs changes punishmentIDs outside of this lock and that keeps the end of the block.
+        punishmentIDs.updateAndGet(v -> packPunishmentIDs(reserved, currentPunishmentID(v)));
     }
 
-    public Set<Long> getModRoles() {
-        return Collections.unmodifiableSet(modRoles);
+    private static long packPunishmentIDs(int reserved, int current) {
+        return ((long) reserved << 32) | (current & 0xFFFFFFFFL);
     }
 
-    public void addModRole(long modRole) {
-        modRoles.add(modRole);
-        updateFile();
+    private static int reservedPunishmentID(long ids) {
+        return (int) (ids >>> 32);
     }
 
-    public void removeModRole(long modRole) {
-        modRoles.remove(modRole);
-        updateFile();
+    private static int currentPunishmentID(long ids) {
+        return (int) ids;
+    }
+
+    /**
+     * @return The IDs of the moderator roles sorted in ascending order. Changes to this array don't reflect back.
+     */
+    public long[] getModRoles() {
+        return modRoles.clone();
+    }
+
+    /**
+     * Check whether a role is a moderator role. This doesn't allocate anything, so it can be used on every command.
+     *
+     * @param roleID The {@link net.dv8tion.jda.api.entities.Role role's} ID.
+     * @return True, if the role is a moderator role.
+     */
+    public boolean isModRole(long roleID) {
+        return Arrays.binarySearch(modRoles, roleID) >= 0;
+    }
+
+    public synchronized void addModRole(long modRole) {
+        long[] roles = modRoles;
+        int index = Arrays.binarySearch(roles, modRole);
+        if (index >= 0)
+            return;
+        index = -index - 1;
+        long[] newRoles = new long[roles.length + 1];
+        System.arraycopy(roles, 0, newRoles, 0, index);
+        newRoles[index] = modRole;
+        System.arraycopy(roles, index, newRoles, index + 1, roles.length - index);
+        modRoles = newRoles;
+        markDirty();
+    }
+
+    public synchronized void removeModRole(long modRole) {
+        long[] roles = modRoles;
+        int index = Arrays.binarySearch(roles, modRole);
+        if (index < 0)
+            return;
+        long[] newRoles = new long[roles.length - 1];
+        System.arraycopy(roles, 0, newRoles, 0, index);
+        System.arraycopy(roles, index + 1, newRoles, index, roles.length - index - 1);
+        modRoles = newRoles;
+        markDirty();
     }
 
     public long getMemberRole() {
@@ -179,7 +375,7 @@ public class ServerData {
 
     public synchronized void setMemberRole(long memberRole) {
         this.memberRole = memberRole;
-        updateFile();
+        markDirty();
     }
 
     public long getMutedRole() {
@@ -188,7 +384,7 @@ public class ServerData {
 
     public synchronized void setMutedRole(long mutedRole) {
         this.mutedRole = mutedRole;
-        updateFile();
+        markDirty();
     }
 
     public long getNoNicknameRole() {
@@ -197,7 +393,7 @@ public class ServerData {
 
     public synchronized void setNoNicknameRole(long noNicknameRole) {
         this.noNicknameRole = noNicknameRole;
-        updateFile();
+        markDirty();
     }
 
     public long[][] getAllLbMessages() {
@@ -215,7 +411,7 @@ public class ServerData {
     public synchronized void setLbMessage(int board, long channelID, long messageID) {
         lbMessages[board][0] = channelID;
         lbMessages[board][1] = messageID;
-        updateFile();
+        markDirty();
     }
 
     public synchronized long getLogChannel() {
@@ -224,7 +420,7 @@ public class ServerData {
 
     public void setLogChannel(long logChannel) {
         this.logChannel = logChannel;
-        updateFile();
+        markDirty();
     }
 
     public long getJoinChannel() {
@@ -233,7 +429,7 @@ public class ServerData {
 
     public synchronized void setJoinChannel(long joinChannel) {
         this.joinChannel = joinChannel;
-        updateFile();
+        markDirty();
     }
 
     public long getPunishmentChannel() {
@@ -242,7 +438,7 @@ public class ServerData {
 
     public synchronized void setPunishmentChannel(long punishmentChannel) {
         this.punishmentChannel = punishmentChannel;
-        updateFile();
+        markDirty();
     }
 
     public long getJoinMsgChannel() {
@@ -251,7 +447,7 @@ public class ServerData {
 
     public synchronized void setJoinMsgChannel(long joinMsgChannel) {
         this.joinMsgChannel = joinMsgChannel;
-        updateFile();
+        markDirty();
     }
 
     public long getNameChannel() {
@@ -260,18 +456,38 @@ public class ServerData {
 
     public synchronized void setNameChannel(long nameChannel) {
         this.nameChannel = nameChannel;
-        updateFile();
+        markDirty();
     }
 
     /**
      * Increments the current punishment ID by 1 and returns this value.
+     * This doesn't lock or write to disk unless the reserved block of IDs is used up.
      *
      * @return The next punishment ID.
+     * @throws IOException If the block was used up and a new one couldn't be reserved.
      */
-    public synchronized int getNextPunishmentID() {
-        currentPunishmentID++;
-        updateFile();
-        return currentPunishmentID;
+    public int getNextPunishmentID() throws IOException {
+        while (true) {
+            long ids = punishmentIDs.get();
+            int current = currentPunishmentID(ids);
+            int reserved = reservedPunishmentID(ids);
+            if (current == reserved) {
+                reservePunishmentIDs();
+                continue;
+            }
+            if (punishmentIDs.compareAndSet(ids, packPunishmentIDs(reserved, current + 1))) {
+                if (reserved - current - 1 == PUNISHMENT_ID_BLOCK / 2) {
+                    flusher.execute(() -> {
+                        try {
+                            reservePunishmentIDs();
+                        } catch (IOException e) {
+                            System.out.println("IO error when reserving punishment IDs! " + e.getMessage());
+                        }
+                    });
+                }
+                return current + 1;
+            }
+        }
     }
 
     public String getJoinMsg() {
@@ -280,6 +496,6 @@ public class ServerData {
 
     public synchronized void setJoinMsg(String joinMsg) {
         this.joinMsg = joinMsg;
-        updateFile();
+        markDirty();
     }
 }
@@ -31,6 +31,11 @@ public class BanCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         String[] args = event.message.split(" ", 4);
@@ -45,21 +45,18 @@ public class CaseCommand extends Command {
             return;
         }
 
-        Punishment[] all;
+        Punishment p;
         try {
-            all = ModerationData.getAllPunishments(event.guild.getIdLong());
+            p = ModerationData.getPunishmentById(event.guild.getIdLong(), pID);
         } catch (IOException e) {
             e.printStackTrace();
             sendException(channel, e);
             return;
         }
 
-        for (Punishment p : all) {
-            if (p.id == pID) {
-                channel.sendMessage(p.getAsCaseEmbed()).queue();
-                return;
-            }
-        }
-        sendError(channel, "No punishment with ID " + pID + " found.");
+        if (p == null)
+            sendError(channel, "No punishment with ID " + pID + " found.");
+        else
+            channel.sendMessage(p.getAsCaseEmbed()).queue();
     }
 }
@@ -4,16 +4,14 @@ import com.tfred.moderationbot.ServerData;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.ChannelType;
-import net.dv8tion.jda.api.entities.ISnowflake;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 
 import javax.annotation.Nonnull;
 import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public abstract class Command {
@@ -37,6 +35,16 @@ public abstract class Command {
         this.moderatorCommand = moderatorCommand;
     }
 
+    /**
+     * Whether this command blocks its thread for a longer time, for example while waiting for a network request or for discord.
+     * Blocking commands run in a separate pool of the {@link CommandExecutor} so they can't delay other commands.
+     *
+     * @return True, if this command is blocking.
+     */
+    public boolean isBlocking() {
+        return false;
+    }
+
     /**
      * Run the command.
      *
@@ -125,11 +133,9 @@ public abstract class Command {
             if (member.hasPermission(Permission.ADMINISTRATOR))
                 return true;
 
-            List<Long> roles = member.getRoles().stream().map(ISnowflake::getIdLong).collect(Collectors.toList());
-            Set<Long> modroles = ServerData.getModRoles(member.getGuild().getIdLong());
-
-            for (long id : roles) {
-                if (modroles.contains(id))
+            ServerData serverData = ServerData.get(member.getGuild().getIdLong());
+            for (Role role : member.getRoles()) {
+                if (serverData.isModRole(role.getIdLong()))
                     return true;
             }
             return false;
@@ -145,9 +151,13 @@ public abstract class Command {
      * @return True, if this command has this name.
      */
     public boolean isCommand(@Nonnull String name) {
-        name = name.toLowerCase();
-
-        return (this.name.equals(name) || Arrays.asList(aliases).contains(name));
+        if (this.name.equalsIgnoreCase(name))
+            return true;
+        for (String alias : aliases) {
+            if (alias.equalsIgnoreCase(name))
+                return true;
+        }
+        return false;
     }
 
     /**
@@ -0,0 +1,276 @@
+package com.tfred.moderationbot.commands;
+
+import net.dv8tion.jda.api.entities.ChannelType;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs commands in two bounded thread pools, one for {@link Command#isBlocking() blocking} commands and one for all others,
+ * so commands waiting for a network request or for discord can't delay the cheap ones.
+ * <p>
+ * Both pools have a bounded amount of pending commands and every guild can only have a limited amount of commands waiting
+ * or running in each pool. Waiting commands are queued per guild and the threads take them from the guilds in turn,
+ * so a waiting command only has to wait for one command of every other guild with waiting commands, no matter how many
+ * a busy guild queued before it. If a command can't be accepted the user gets told to try again later.
+ * <p>
+ * If the COMMAND_VIRTUAL_THREADS environment variable is set to true and the bot runs on a JDK with virtual threads (21+),
+ * every command runs on its own virtual thread instead, so blocking commands don't tie up platform threads.
+ * The pools then only limit how many commands can be pending at once.
+ */
+public class CommandExecutor {
+    private static final int MAX_PENDING_PER_GUILD = 5;
+    private static final boolean VIRTUAL_THREADS = "true".equalsIgnoreCase(System.getenv("COMMAND_VIRTUAL_THREADS"));
+
+    public final Pool cheap;
+    public final Pool blocking;
+
+    /**
+     * Create a new command executor.
+     */
+    public CommandExecutor() {
+        cheap = new Pool("cheap", Math.max(2, Runtime.getRuntime().availableProcessors()), 100);
+        blocking = new Pool("blocking", 8, 50);
+    }
+
+    /**
+     * Run a command in the pool it belongs to.
+     * If the pool or the guild has too many pending commands the command doesn't run and an error message gets sent instead.
+     *
+     * @param command The command to run.
+     * @param event   The message event of the command.
+     */
+    public void execute(@Nonnull Command command, @Nonnull MessageReceivedEvent event) {
+        Pool pool = command.isBlocking() ? blocking : cheap;
+        long guildID = event.isFromGuild() ? event.getGuild().getIdLong() : 0;
+
+        if (!pool.execute(guildID, () -> command.run(event))) {
+            if (!event.isFromType(ChannelType.TEXT) || event.getAuthor().isBot() || event.isWebhookMessage())
+                return;
+            TextChannel channel = event.getTextChannel();
+            if (channel.canTalk())
+                CommandUtils.sendError(channel, "Too many commands are running right now, please try again in a moment.");
+        }
+    }
+
+    /**
+     * Stop accepting commands. Commands which are already running or waiting still get executed.
+     */
+    public void shutdown() {
+        cheap.executor.shutdown();
+        blocking.executor.shutdown();
+    }
+
+    /**
+     * Create an executor which starts a new virtual thread for every task.
+     * This uses reflection since the bot is still built for Java 8.
+     *
+     * @return The executor or null if virtual threads aren't available.
+     */
+    @Nullable
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("[CommandExecutor] WARNING - Virtual threads aren't available on Java " + System.getProperty("java.version") + ", using platform threads instead.");
+            return null;
+        }
+    }
+
+    /**
+     * A bounded thread pool for commands which keeps track of its queue and its latencies.
+     */
+    public static class Pool {
+        public final String name;
+        /**
+         * Whether the commands of this pool run on virtual threads.
+         */
+        public final boolean virtualThreads;
+        private final ExecutorService executor;
+        private final int maxPending;
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final AtomicInteger running = new AtomicInteger(0);
+        private final ConcurrentHashMap<Long, AtomicInteger> pendingPerGuild = new ConcurrentHashMap<>();
+        // The waiting commands of every guild and the guilds with waiting commands in the order they are served, guarded by this pool.
+        private final HashMap<Long, ArrayDeque<QueuedCommand>> queues = new HashMap<>();
+        private final ArrayDeque<Long> readyGuilds = new ArrayDeque<>();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder totalWait = new LongAdder();
+        private final LongAdder totalRun = new LongAdder();
+        private final AtomicLong maxWait = new AtomicLong(0);
+
+        private Pool(String name, int threads, int queueSize) {
+            this.name = name;
+            maxPending = threads + queueSize;
+
+            ExecutorService virtual = VIRTUAL_THREADS ? newVirtualThreadExecutor() : null;
+            virtualThreads = virtual != null;
+            if (virtualThreads)
+                executor = virtual;
+            else {
+                AtomicInteger threadCount = new AtomicInteger(0);
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "Command " + name + " " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                pool.allowCoreThreadTimeOut(true);
+                executor = pool;
+            }
+        }
+
+        /**
+         * @return False if the task was rejected.
+         */
+        boolean execute(long guildID, Runnable task) {
+            AtomicInteger guildPending = pendingPerGuild.computeIfAbsent(guildID, id -> new AtomicInteger(0));
+            if (guildPending.incrementAndGet() > MAX_PENDING_PER_GUILD) {
+                guildPending.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                guildPending.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+
+            QueuedCommand command = new QueuedCommand(task, guildPending);
+            synchronized (this) {
+                ArrayDeque<QueuedCommand> queue = queues.computeIfAbsent(guildID, id -> new ArrayDeque<>());
+                if (queue.isEmpty())
+                    readyGuilds.add(guildID);
+                queue.add(command);
+            }
+            // Every command submits one runner, which runs the next command in turn and not necessarily this one.
+            try {
+                executor.execute(this::runNext);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    ArrayDeque<QueuedCommand> queue = queues.get(guildID);
+                    queue.removeLastOccurrence(command);
+                    if (queue.isEmpty()) {
+                        queues.remove(guildID);
+                        readyGuilds.remove(guildID);
+                    }
+                }
+                pending.decrementAndGet();
+                guildPending.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Run the first waiting command of the next guild and move that guild to the back.
+         */
+        private void runNext() {
+            QueuedCommand command;
+            synchronized (this) {
+                Long guildID = readyGuilds.poll();
+                if (guildID == null)
+                    return;
+                ArrayDeque<QueuedCommand> queue = queues.get(guildID);
+                command = queue.poll();
+                if (queue.isEmpty())
+                    queues.remove(guildID);
+                else
+                    readyGuilds.add(guildID);
+            }
+
+            long started = System.nanoTime();
+            running.incrementAndGet();
+            try {
+                command.task.run();
+            } finally {
+                running.decrementAndGet();
+                pending.decrementAndGet();
+                command.guildPending.decrementAndGet();
+                long wait = started - command.queued;
+                totalWait.add(wait);
+                totalRun.add(System.nanoTime() - started);
+                maxWait.accumulateAndGet(wait, Math::max);
+                completed.increment();
+            }
+        }
+
+        /**
+         * @return The amount of commands waiting for a thread.
+         */
+        public int getQueueSize() {
+            return Math.max(0, pending.get() - running.get());
+        }
+
+        /**
+         * @return The amount of commands that are running right now.
+         */
+        public int getActiveCount() {
+            return running.get();
+        }
+
+        /**
+         * @return The amount of commands that finished running.
+         */
+        public long getCompletedCount() {
+            return completed.sum();
+        }
+
+        /**
+         * @return The amount of commands that were rejected because the pool or the guild had too many pending commands.
+         */
+        public long getRejectedCount() {
+            return rejected.sum();
+        }
+
+        /**
+         * @return The average time commands waited for a thread in milliseconds.
+         */
+        public double getAverageWaitMillis() {
+            long count = completed.sum();
+            return count == 0 ? 0 : totalWait.sum() / 1000000. / count;
+        }
+
+        /**
+         * @return The longest time a command waited for a thread in milliseconds.
+         */
+        public double getMaxWaitMillis() {
+            return maxWait.get() / 1000000.;
+        }
+
+        /**
+         * @return The average time commands took to run in milliseconds.
+         */
+        public double getAverageRunMillis() {
+            long count = completed.sum();
+            return count == 0 ? 0 : totalRun.sum() / 1000000. / count;
+        }
+
+        private static class QueuedCommand {
+            final Runnable task;
+            final AtomicInteger guildPending;
+            final long queued = System.nanoTime();
+
+            QueuedCommand(Runnable task, AtomicInteger guildPending) {
+                this.task = task;
+                this.guildPending = guildPending;
+            }
+        }
+    }
+}
@@ -4,17 +4,22 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.concurrent.CompletableFuture;
+import java.util.HashMap;
 
 public class CommandListener extends ListenerAdapter {
+    public final CommandExecutor executor = new CommandExecutor();
     private final ArrayList<Command> commands;
+    // The lower case names and aliases of all commands. If multiple commands use the same name the first one added gets it.
+    private final HashMap<String, Command> commandsByName;
 
     /**
      * Create a new listener for commands. The commands to listen for have to be added with addCommand(command).
      */
     public CommandListener() {
         commands = new ArrayList<>();
+        commandsByName = new HashMap<>();
     }
 
     /**
@@ -25,9 +30,23 @@ public class CommandListener extends ListenerAdapter {
      */
     public CommandListener addCommand(@Nonnull Command command) {
         commands.add(command);
+        commandsByName.putIfAbsent(command.name.toLowerCase(), command);
+        for (String alias : command.aliases)
+            commandsByName.putIfAbsent(alias.toLowerCase(), command);
         return this;
     }
 
+    /**
+     * Get a command by its name or one of its aliases (case-insensitive).
+     *
+     * @param name The name. Example: "help".
+     * @return The command or null if there is no command with that name.
+     */
+    @Nullable
+    public Command getCommand(@Nonnull String name) {
+        return commandsByName.get(name.toLowerCase());
+    }
+
     /**
      * Get all added commands.
      */
@@ -39,20 +58,12 @@ public class CommandListener extends ListenerAdapter {
     public void onMessageReceived(@Nonnull MessageReceivedEvent event) {
         String msg = event.getMessage().getContentRaw();
 
-        if (!msg.isEmpty() && msg.charAt(0) == '!') {
-            for (Command command : commands) {
-                int space = msg.indexOf(' ');
-                String commandName;
-                if (space > 0)
-                    commandName = msg.substring(1, space);
-                else
-                    commandName = msg.substring(1);
-
-                if (command.isCommand(commandName)) {
-                    CompletableFuture.runAsync(() -> command.run(event));
-                    return;
-                }
-            }
-        }
+        if (msg.isEmpty() || msg.charAt(0) != '!')
+            return;
+
+        int space = msg.indexOf(' ');
+        Command command = getCommand(space > 0 ? msg.substring(1, space) : msg.substring(1));
+        if (command != null)
+            executor.execute(command, event);
     }
 }
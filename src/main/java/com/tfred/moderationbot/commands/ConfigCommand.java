@@ -8,7 +8,6 @@ import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.TextChannel;
 
 import javax.annotation.Nonnull;
-import java.util.Set;
 
 import static com.tfred.moderationbot.commands.CommandUtils.*;
 
@@ -44,12 +43,12 @@ public class ConfigCommand extends Command {
             EmbedBuilder embedBuilder = new EmbedBuilder();
             embedBuilder.setTitle("__Settings for " + event.guild.getName() + ":__").setColor(DEFAULT_COLOR);
 
-            Set<Long> modRoleIds = serverData.getModRoles();
+            long[] modRoleIds = serverData.getModRoles();
             String modRoles;
-            if (modRoleIds.isEmpty())
+            if (modRoleIds.length == 0)
                 modRoles = "*None*";
             else {
-                StringBuilder stringBuilder = new StringBuilder(modRoleIds.size());
+                StringBuilder stringBuilder = new StringBuilder(modRoleIds.length);
                 for (long id : modRoleIds) {
                     stringBuilder.append("*<@&").append(id).append(">*\n");
                 }
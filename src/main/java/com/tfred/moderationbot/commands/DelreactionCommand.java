@@ -26,6 +26,11 @@ public class DelreactionCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         String[] args = event.args;
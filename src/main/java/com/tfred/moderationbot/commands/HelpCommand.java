@@ -53,11 +53,10 @@ public class HelpCommand extends Command {
 
             event.channel.sendMessage(eb.build()).queue();
         } else {
-            for (Command c : commandListener.getCommands()) {
-                if (c.isCommand(event.args[1])) {
-                    c.sendHelpMessage(event.channel);
-                    return;
-                }
+            Command c = commandListener.getCommand(event.args[1]);
+            if (c != null) {
+                c.sendHelpMessage(event.channel);
+                return;
             }
             CommandUtils.sendError(event.channel, "Unknown command: ``" + event.args[1] + "``");
         }
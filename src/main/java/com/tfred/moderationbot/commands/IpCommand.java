@@ -20,6 +20,11 @@ public class IpCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         try {
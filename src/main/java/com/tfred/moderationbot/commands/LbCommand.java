@@ -32,6 +32,11 @@ public class LbCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         TextChannel channel = event.channel;
@@ -29,6 +29,11 @@ public class ListnamesCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         List<Member> members;
@@ -1,23 +1,32 @@
 package com.tfred.moderationbot.commands;
 
+import com.google.common.cache.CacheStats;
+import com.tfred.moderationbot.HttpService;
+import com.tfred.moderationbot.ServerData;
+import com.tfred.moderationbot.usernames.MojangRequestScheduler;
+import com.tfred.moderationbot.usernames.NameCache;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 
 import javax.annotation.Nonnull;
 import java.util.Locale;
+import java.util.Map;
 
 public class MemCommand extends Command {
-    public MemCommand() {
+    private final CommandListener commandListener;
+
+    public MemCommand(@Nonnull CommandListener commandListener) {
         super(
                 "mem",
                 new String[]{"memoryusage"},
                 "!mem",
-                "Shows the current memory usage.",
+                "Shows the current memory usage, the state of the server data and name caches and the command executor, Mojang request and http statistics.",
                 new Permission[]{},
                 true,
                 false,
                 false
         );
+        this.commandListener = commandListener;
     }
 
     @Override
@@ -30,10 +39,35 @@ public class MemCommand extends Command {
 
             double usedP = (1. - (free / total)) * 100.;
 
+            CacheStats stats = ServerData.getCacheStats();
+
             EmbedBuilder eb = new EmbedBuilder()
                     .setColor(CommandUtils.DEFAULT_COLOR)
                     .setTitle("Memory usage (in MB):")
-                    .setDescription(String.format(Locale.US, "**Used:** ``%.2f / %.2f`` ``(%.2f%%)``\n**Max:** ``%.2f``", (total - free), total, usedP, max));
+                    .setDescription(String.format(Locale.US, "**Used:** ``%.2f / %.2f`` ``(%.2f%%)``\n**Max:** ``%.2f``", (total - free), total, usedP, max))
+                    .addField("Server data cache:", String.format(Locale.US,
+                            "**Guilds:** ``%d``\n**Hits:** ``%d`` ``(%.2f%%)``\n**Misses:** ``%d`` (``%d`` still in use)\n**Evictions:** ``%d``\n**Average load time:** ``%.2f ms``",
+                            ServerData.getCacheSize(), stats.hitCount(), stats.hitRate() * 100., stats.missCount(), ServerData.getRevivedCount(),
+                            stats.evictionCount(), stats.averageLoadPenalty() / 1000000.), false);
+            for (CommandExecutor.Pool pool : new CommandExecutor.Pool[]{commandListener.executor.cheap, commandListener.executor.blocking}) {
+                eb.addField("Commands (" + pool.name + (pool.virtualThreads ? ", virtual threads" : "") + "):", String.format(Locale.US,
+                        "**Queued:** ``%d``\n**Running:** ``%d``\n**Completed:** ``%d``\n**Rejected:** ``%d``\n**Wait:** ``%.2f ms`` avg, ``%.2f ms`` max\n**Run time:** ``%.2f ms`` avg",
+                        pool.getQueueSize(), pool.getActiveCount(), pool.getCompletedCount(), pool.getRejectedCount(),
+                        pool.getAverageWaitMillis(), pool.getMaxWaitMillis(), pool.getAverageRunMillis()), false);
+            }
+            eb.addField("Name cache:", String.format(Locale.US, "**UUIDs:** ``%d``\n**Fresh:** ``%d``\n**Stale:** ``%d``\n**Fetched:** ``%d``",
+                    NameCache.size(), NameCache.getHitCount(), NameCache.getStaleCount(), NameCache.getMissCount()), false);
+            eb.addField("Mojang requests:", String.format(Locale.US,
+                    "**Available tokens:** ``%d``\n**Interactive:** ``%d`` (``%d`` rejected)\n**Interactive wait:** ``%.2f ms`` avg, ``%.2f ms`` max\n**Bulk:** ``%d``\n**Bulk wait:** ``%.2f ms`` avg",
+                    MojangRequestScheduler.getAvailableTokens(), MojangRequestScheduler.getInteractiveCount(), MojangRequestScheduler.getRejectedCount(),
+                    MojangRequestScheduler.getAverageInteractiveWaitMillis(), MojangRequestScheduler.getMaxInteractiveWaitMillis(),
+                    MojangRequestScheduler.getBulkCount(), MojangRequestScheduler.getAverageBulkWaitMillis()), false);
+            for (Map.Entry<String, HttpService.HostStats> entry : HttpService.getHostStats().entrySet()) {
+                HttpService.HostStats host = entry.getValue();
+                eb.addField("Http (" + entry.getKey() + "):", String.format(Locale.US,
+                        "**Running:** ``%d``\n**Finished:** ``%d`` (``%d`` failed)\n**Time:** ``%.2f ms`` avg",
+                        host.getInFlight(), host.getRequestCount(), host.getFailedCount(), host.getAverageMillis()), false);
+            }
 
             event.channel.sendMessage(eb.build()).queue();
         } catch (Exception ignored) {
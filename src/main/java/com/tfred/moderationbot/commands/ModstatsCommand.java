@@ -1,6 +1,7 @@
 package com.tfred.moderationbot.commands;
 
-import com.tfred.moderationbot.moderation.*;
+import com.tfred.moderationbot.moderation.ModerationData;
+import com.tfred.moderationbot.moderation.ModeratorStats;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Member;
@@ -45,77 +46,17 @@ public class ModstatsCommand extends Command {
             return;
         }
 
-        Punishment[] all;
+        ModeratorStats stats;
         try {
-            all = ModerationData.getAllPunishments(event.guild.getIdLong());
+            stats = ModerationData.getModeratorStats(event.guild.getIdLong(), moderator.getIdLong());
         } catch (IOException e) {
             e.printStackTrace();
             sendException(channel, e);
             return;
         }
-
-        int[] last7Days = new int[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-        int[] last30Days = new int[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-        int[] allTime = new int[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
-
-        long userID = moderator.getIdLong();
-
-        long currentTime = System.currentTimeMillis();
-
-        for (Punishment p : all) {
-            if (p.moderatorID == userID) {
-                boolean week = false;
-                boolean month = false;
-                if (currentTime - p.date < 604800000L) {
-                    week = true;
-                    month = true;
-                } else if (currentTime - p.date < 2592000000L)
-                    month = true;
-
-                short type = -1;
-                if (p instanceof MutePunishment) {
-                    switch (((MutePunishment) p).severity) {
-                        case 1:
-                            type = 0;
-                            break;
-                        case 2:
-                            type = 1;
-                            break;
-                        case 3:
-                            type = 2;
-                            break;
-                        case 4:
-                            type = 3;
-                            break;
-                        case 5:
-                            type = 4;
-                            break;
-                    }
-                } else if (p instanceof BanPunishment) {
-                    switch (((BanPunishment) p).severity) {
-                        case 1:
-                            type = 5;
-                            break;
-                        case 2:
-                            type = 6;
-                            break;
-                    }
-                } else if (p instanceof ChannelBanPunishment)
-                    type = 7;
-                else if (p instanceof NamePunishment)
-                    type = 8;
-                else if (p instanceof PardonPunishment)
-                    type = 9;
-
-                if (type != -1) {
-                    if (week)
-                        last7Days[type]++;
-                    if (month)
-                        last30Days[type]++;
-                    allTime[type]++;
-                }
-            }
-        }
+        int[] last7Days = stats.last7Days;
+        int[] last30Days = stats.last30Days;
+        int[] allTime = stats.allTime;
 
         EmbedBuilder eb = new EmbedBuilder()
                 .setColor(DEFAULT_COLOR)
@@ -25,6 +25,11 @@ public class NameCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         UsernameHandler usernameHandler = UsernameHandler.get(event.guild.getIdLong());
@@ -15,7 +15,6 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
-import java.util.stream.Collectors;
 
 import static com.tfred.moderationbot.commands.CommandUtils.*;
 
@@ -35,6 +34,11 @@ public class PardonCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         String[] args = event.message.split(" ", 4);
@@ -106,7 +110,7 @@ public class PardonCommand extends Command {
 
         List<Punishment> punishments;
         try {
-            punishments = Arrays.stream(ModerationData.getActivePunishments(guild.getIdLong())).filter(p -> p.userID == userID).collect(Collectors.toList());
+            punishments = Arrays.asList(ModerationData.getActiveUserPunishments(guild.getIdLong(), userID));
         } catch (IOException e) {
             e.printStackTrace();
             sendException(channel, e);
@@ -1,18 +1,17 @@
 package com.tfred.moderationbot.commands;
 
+import com.tfred.moderationbot.moderation.LeaderboardEntry;
 import com.tfred.moderationbot.moderation.ModerationData;
-import com.tfred.moderationbot.moderation.PardonPunishment;
-import com.tfred.moderationbot.moderation.Punishment;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.StringJoiner;
 
 import static com.tfred.moderationbot.commands.CommandUtils.DEFAULT_COLOR;
+import static com.tfred.moderationbot.commands.CommandUtils.sendError;
 import static com.tfred.moderationbot.commands.CommandUtils.sendException;
 
 public class PunishlbCommand extends Command {
@@ -20,8 +19,8 @@ public class PunishlbCommand extends Command {
         super(
                 "punishlb",
                 new String[]{"whoisabadboy/girl"},
-                "!punishlb",
-                "Show the top 10 users by punishments.",
+                "!punishlb [7d|30d]",
+                "Show the top 10 users by punishments of all time or the last 7 or 30 days.",
                 new Permission[]{},
                 false,
                 false,
@@ -31,43 +30,39 @@ public class PunishlbCommand extends Command {
 
     @Override
     protected void execute(@Nonnull CommandEvent event) {
-        Punishment[] all;
+        int days;
+        String title;
+        if (event.args.length == 1) {
+            days = 0;
+            title = "Top 10 punishments leaderboard!";
+        } else if (event.args.length == 2 && (event.args[1].equalsIgnoreCase("7d") || event.args[1].equalsIgnoreCase("30d"))) {
+            days = Integer.parseInt(event.args[1].substring(0, event.args[1].length() - 1));
+            title = "Top 10 punishments leaderboard of the last " + days + " days!";
+        } else {
+            sendError(event.channel, "Invalid time window. Use 7d, 30d or nothing for all time.");
+            return;
+        }
+
+        LeaderboardEntry[] top;
         try {
-            all = ModerationData.getAllPunishments(event.guild.getIdLong());
+            top = ModerationData.getPunishmentLeaderboard(event.guild.getIdLong(), days);
         } catch (IOException e) {
             e.printStackTrace();
             sendException(event.channel, e);
             return;
         }
 
-        Map<Long, Integer> count = new HashMap<>();
-
-        for (Punishment p : all) {
-            if (!(p instanceof PardonPunishment)) {
-                long ID = p.userID;
-                count.merge(ID, 1, Integer::sum);
-            }
-        }
-
-        ArrayList<Map.Entry<Long, Integer>> sortedCount = count
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .limit(10)
-                .collect(Collectors.toCollection(ArrayList::new));
-
         StringJoiner mentions = new StringJoiner("\n");
         StringJoiner scores = new StringJoiner("\n");
 
-        for (int i = 0; i < sortedCount.size(); i++) {
-            Map.Entry<Long, Integer> e = sortedCount.get(i);
-            mentions.add("**" + (i + 1) + "**  <@" + e.getKey() + ">");
-            scores.add(String.valueOf(e.getValue()));
+        for (int i = 0; i < top.length; i++) {
+            mentions.add("**" + (i + 1) + "**  <@" + top[i].userID + ">");
+            scores.add(String.valueOf(top[i].count));
         }
 
         EmbedBuilder eb = new EmbedBuilder()
                 .setColor(DEFAULT_COLOR)
-                .setTitle("Top 10 punishments leaderboard!")
+                .setTitle(title)
                 .setTimestamp(Instant.now())
                 .addField("**User**", mentions.toString(), true)
                 .addField("**Punishments**", scores.toString(), true);
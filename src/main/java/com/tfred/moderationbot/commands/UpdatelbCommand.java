@@ -21,6 +21,11 @@ public class UpdatelbCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         Leaderboards.updateLeaderboards(event.channel, event.guild);
@@ -19,6 +19,11 @@ public class UpdatenamesCommand extends Command {
         );
     }
 
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
     @Override
     protected void execute(@Nonnull CommandEvent event) {
         event.channel.sendMessage("Updating usernames (please note that the bot cannot change the nicknames of users with a higher role).")
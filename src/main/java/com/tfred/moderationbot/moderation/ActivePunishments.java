@@ -0,0 +1,187 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The active punishments of a guild, indexed by punishment and user ID.
+ * <p>
+ * The punishments are stored in moderations/guildID/active.punishments with one {@link Punishment#toString() punishment} per line.
+ * Changes don't rewrite that file but get appended to moderations/guildID/active.journal as
+ * "+ punishment" or "- punishmentID" lines. Once the journal gets longer than the amount of active punishments
+ * it gets compacted into a new active.punishments file, so every change costs amortized constant time.
+ * Replaying the journal is idempotent, which means a crash between writing the new file and clearing the journal is harmless.
+ * This class isn't thread safe, synchronization is handled by {@link ModerationData}.
+ */
+class ActivePunishments {
+    private static final ConcurrentHashMap<Long, ActivePunishments> allActivePunishments = new ConcurrentHashMap<>();
+    private static final int MIN_COMPACT_SIZE = 100;
+
+    public final long guildID;
+    private final Path path;
+    private final Path journalPath;
+    private final LinkedHashMap<Integer, TimedPunishment> byId = new LinkedHashMap<>();
+    private final HashMap<Long, List<TimedPunishment>> byUser = new HashMap<>();
+    private int journalSize = 0;
+
+    private ActivePunishments(long guildID) throws IOException {
+        this.guildID = guildID;
+        Path dir = Paths.get("moderations/" + guildID);
+        this.path = dir.resolve("active.punishments");
+        this.journalPath = dir.resolve("active.journal");
+
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path)) {
+                if (line.isEmpty())
+                    continue;
+                Punishment p = Punishment.parsePunishment(line);
+                if (p instanceof TimedPunishment)
+                    put((TimedPunishment) p);
+            }
+        }
+
+        if (Files.exists(journalPath)) {
+            for (String line : Files.readAllLines(journalPath)) {
+                if (line.length() < 3)
+                    continue;
+                journalSize++;
+                try {
+                    if (line.charAt(0) == '+') {
+                        Punishment p = Punishment.parsePunishment(line.substring(2));
+                        if (p instanceof TimedPunishment)
+                            put((TimedPunishment) p);
+                    } else if (line.charAt(0) == '-')
+                        delete(Integer.parseInt(line.substring(2)));
+                } catch (RuntimeException e) {
+                    System.out.println("Skipped invalid line in the active punishment journal of guild " + guildID + ": " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the active punishments of a guild. They get loaded from disk on the first call.
+     *
+     * @param guildID The {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @return The active punishments.
+     * @throws IOException If an IO error occurred while loading the active punishments.
+     */
+    static ActivePunishments get(long guildID) throws IOException {
+        ActivePunishments active = allActivePunishments.get(guildID);
+        if (active != null)
+            return active;
+        synchronized (ModerationData.loadLock(guildID)) {
+            active = allActivePunishments.get(guildID);
+            if (active == null) {
+                active = new ActivePunishments(guildID);
+                allActivePunishments.put(guildID, active);
+            }
+            return active;
+        }
+    }
+
+    private void put(@Nonnull TimedPunishment p) {
+        delete(p.id);
+        byId.put(p.id, p);
+        byUser.computeIfAbsent(p.userID, k -> new ArrayList<>(2)).add(p);
+    }
+
+    @Nullable
+    private TimedPunishment delete(int punishmentID) {
+        TimedPunishment p = byId.remove(punishmentID);
+        if (p != null) {
+            List<TimedPunishment> userPunishments = byUser.get(p.userID);
+            userPunishments.remove(p);
+            if (userPunishments.isEmpty())
+                byUser.remove(p.userID);
+        }
+        return p;
+    }
+
+    /**
+     * Add an active punishment.
+     *
+     * @param p The punishment.
+     * @throws IOException If an IO error occurred while writing to the journal. The punishment doesn't get added in that case.
+     */
+    void add(@Nonnull TimedPunishment p) throws IOException {
+        writeJournal("+ " + p.toString());
+        put(p);
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove an active punishment.
+     *
+     * @param punishmentID The ID of the punishment to remove.
+     * @return The removed punishment or null if there is no active punishment with that ID.
+     * @throws IOException If an IO error occurred while writing to the journal. The punishment doesn't get removed in that case.
+     */
+    @Nullable
+    TimedPunishment remove(int punishmentID) throws IOException {
+        if (!byId.containsKey(punishmentID))
+            return null;
+        writeJournal("- " + punishmentID);
+        TimedPunishment p = delete(punishmentID);
+        compactIfNeeded();
+        return p;
+    }
+
+    /**
+     * @return All active punishments in the order they were added.
+     */
+    @Nonnull
+    TimedPunishment[] getAll() {
+        return byId.values().toArray(new TimedPunishment[0]);
+    }
+
+    /**
+     * @param userID The {@link net.dv8tion.jda.api.entities.User user's} ID.
+     * @return All active punishments of that user in the order they were added.
+     */
+    @Nonnull
+    TimedPunishment[] getUserPunishments(long userID) {
+        List<TimedPunishment> userPunishments = byUser.get(userID);
+        if (userPunishments == null)
+            return new TimedPunishment[0];
+        return userPunishments.toArray(new TimedPunishment[0]);
+    }
+
+    private void writeJournal(String line) throws IOException {
+        Files.createDirectories(journalPath.getParent());
+        Files.write(journalPath, (line + '\n').getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalSize++;
+    }
+
+    /**
+     * Write all active punishments to a new active.punishments file and clear the journal if it got too long.
+     * Errors only get printed since the journal still contains all changes.
+     */
+    private void compactIfNeeded() {
+        if (journalSize <= Math.max(MIN_COMPACT_SIZE, byId.size()))
+            return;
+
+        try {
+            List<String> lines = new ArrayList<>(byId.size());
+            for (TimedPunishment p : byId.values())
+                lines.add(p.toString());
+
+            Path temp = Paths.get(path + ".tmp");
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(journalPath, new byte[0]);
+            journalSize = 0;
+        } catch (IOException e) {
+            System.out.println("Failed to compact the active punishments of guild " + guildID + "! " + e.getMessage());
+        }
+    }
+}
@@ -12,14 +12,13 @@ import org.apache.commons.text.StringEscapeUtils;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class BanPunishment extends TimedPunishment {
+    private static final Pattern PATTERN = Pattern.compile("b (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+    private static final Pattern USER_FILE_PATTERN = Pattern.compile("b (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+
     public final short severity;
 
     /**
@@ -46,38 +45,9 @@ public class BanPunishment extends TimedPunishment {
         if(sev == 3)
             return 2147483647;
 
-        Punishment[] punishments = ModerationData.getUserPunishments(guildID, userID);
-
-        boolean prev = false; // If there is a previous ban of the same severity
-        long endDate = 0;    // time till ^ ends
-        int punishmentDuration = 0;     // duration of ^
-        Set<Integer> hidden = new HashSet<>(); // Set of punishment ids that were pardoned and marked as hidden.
-        Map<Integer, Long> pardoned = new HashMap<>(); // Map of punishment ids that were pardoned and not marked as hidden mapped to the date when pardoned.
-        boolean wasPardoned = false;
-
-        for (int i = punishments.length - 1; i >= 0; i--) {
-            Punishment p = punishments[i];
-
-            if ((p instanceof BanPunishment) && (((BanPunishment) p).severity == sev)) {
-                if (!hidden.contains(p.id)) {
-                    prev = true;
-                    endDate = p.date + (((long) ((BanPunishment) p).duration) * 60000);
-                    punishmentDuration = ((BanPunishment) p).duration;
-                    if (pardoned.containsKey(p.id)) {
-                        wasPardoned = true;
-                        endDate = pardoned.get(p.id);
-                    }
-                    break;
-                }
-            } else if ((p instanceof PardonPunishment) && (((PardonPunishment) p).pardonedPunishmentType == 'b')) {
-                if (((PardonPunishment) p).hide)
-                    hidden.add(((PardonPunishment) p).pardonedPunishmentID);
-                else
-                    pardoned.put(((PardonPunishment) p).pardonedPunishmentID, p.date);
-            }
-        }
+        EscalationCache.LastPunishment last = ModerationData.getLastPunishment(guildID, userID, 'b', sev);
 
-        if (!prev) {
+        if (last == null) {
             if (sev == 1)
                 return 20160;
             if (sev == 2)
@@ -86,19 +56,19 @@ public class BanPunishment extends TimedPunishment {
                 return 0;
         }
 
-        long timeSinceEnded = (System.currentTimeMillis() - endDate); //time since last punishment ended
+        long timeSinceEnded = (System.currentTimeMillis() - last.endDate()); //time since last punishment ended
 
-        if (timeSinceEnded < 0 && !wasPardoned)
-            return punishmentDuration;
+        if (timeSinceEnded < 0 && !last.pardoned)
+            return last.duration;
         else if (timeSinceEnded < 172800000L)
-            return punishmentDuration * 2;
+            return last.duration * 2;
         else {
             if (sev == 1)
-                return punishmentDuration + 20160;
+                return last.duration + 20160;
             if (sev == 2)
-                return punishmentDuration + 64800;
+                return last.duration + 64800;
             else
-                return punishmentDuration;
+                return last.duration;
         }
     }
 
@@ -112,8 +82,7 @@ public class BanPunishment extends TimedPunishment {
      */
     @Nullable
     public static BanPunishment parseBanPunishment(long userID, String string) {
-        Pattern p = Pattern.compile("b (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = USER_FILE_PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -142,8 +111,7 @@ public class BanPunishment extends TimedPunishment {
      */
     @Nullable
     public static BanPunishment parseBanPunishment(String string) {
-        Pattern p = Pattern.compile("b (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = PATTERN.matcher(string);
 
         if (!m.find())
             return null;
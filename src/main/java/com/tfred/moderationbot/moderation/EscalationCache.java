@@ -0,0 +1,267 @@
+package com.tfred.moderationbot.moderation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The previous punishments of users that the duration of new punishments depends on, so calculating a duration doesn't
+ * require going through the whole punishment history of the user.
+ * <p>
+ * Punishments are grouped by type and by severity for mutes and bans or by channel for channel bans. For every group the
+ * punishments which weren't pardoned with hide are kept together with the date of their first pardon, so the last
+ * punishment of a group can be looked up directly even if the latest one gets hidden later.
+ * Users get loaded from the {@link PunishmentLog punishment log} on their first lookup and are then kept up to date with the log.
+ * At most {@link #MAX_USERS} users are kept per guild (ESCALATION_CACHE_SIZE environment variable, 10000 by default),
+ * the least recently used ones get evicted first and are loaded from the log again on their next lookup.
+ * <p>
+ * If the ESCALATION_VERIFY environment variable is set to true every lookup also gets calculated from the full history
+ * of the user like before and any mismatch gets printed.
+ * This class isn't thread safe, synchronization is handled by {@link ModerationData}.
+ */
+class EscalationCache {
+    private static final ConcurrentHashMap<Long, EscalationCache> allCaches = new ConcurrentHashMap<>();
+    static final boolean VERIFY = "true".equalsIgnoreCase(System.getenv("ESCALATION_VERIFY"));
+    private static final int MAX_USERS = configuredCacheSize();
+
+    public final long guildID;
+    private final Cache<Long, UserHistory> users = CacheBuilder.newBuilder().maximumSize(MAX_USERS).build();
+    private int loggedCount = 0;
+
+    private EscalationCache(long guildID) {
+        this.guildID = guildID;
+    }
+
+    private static int configuredCacheSize() {
+        String size = System.getenv("ESCALATION_CACHE_SIZE");
+        if (size != null) {
+            try {
+                return Integer.parseInt(size);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid ESCALATION_CACHE_SIZE \"" + size + "\"! Using 10000.");
+            }
+        }
+        return 10000;
+    }
+
+    /**
+     * Get the escalation cache of a guild.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     *
+     * @param guildID The {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @return The escalation cache.
+     * @throws IOException If an IO error occurred while reading the punishment log.
+     */
+    static EscalationCache get(long guildID) throws IOException {
+        EscalationCache cache = allCaches.get(guildID);
+        if (cache != null)
+            return cache;
+        synchronized (ModerationData.loadLock(guildID)) {
+            cache = allCaches.get(guildID);
+            if (cache == null) {
+                cache = new EscalationCache(guildID);
+                cache.loggedCount = PunishmentLog.get(guildID).count();
+                allCaches.put(guildID, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Apply all punishments that were added to the log since the last update to the loaded users.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     */
+    void update(@Nonnull PunishmentLog log) {
+        if (loggedCount > log.count()) {
+            // The log got shorter, so the loaded users don't match it anymore.
+            users.invalidateAll();
+            loggedCount = log.count();
+            return;
+        }
+
+        log.forEach(loggedCount, record -> {
+            UserHistory history = users.getIfPresent(record.userID);
+            if (history != null)
+                history.add(record);
+        });
+        loggedCount = log.count();
+    }
+
+    /**
+     * Get the last punishment of a user in a group which wasn't pardoned with hide.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     *
+     * @param log    The punishment log of the guild.
+     * @param userID The {@link net.dv8tion.jda.api.entities.User user's} ID.
+     * @param type   The type of the punishment: m, b, c or n.
+     * @param key    The severity for mutes and bans, the channel ID for channel bans and 0 for name punishments.
+     * @return A copy of the last punishment or null if there is none.
+     */
+    @Nullable
+    LastPunishment getLast(@Nonnull PunishmentLog log, long userID, char type, long key) {
+        update(log);
+
+        UserHistory history = users.getIfPresent(userID);
+        if (history == null) {
+            UserHistory loaded = new UserHistory();
+            log.forEachOfUser(userID, loaded::add);
+            users.put(userID, loaded);
+            history = loaded;
+        }
+        LastPunishment last = history.getLast(type, key);
+
+        if (VERIFY) {
+            LastPunishment expected = fromHistory(log.getUserPunishments(userID), type, key);
+            if (!LastPunishment.matches(last, expected)) {
+                System.out.println("Escalation cache mismatch in guild " + guildID + " for user " + userID + " (" + type + " " + key + ")! Cached: "
+                        + last + ", history: " + expected + ".");
+                return expected;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Find the last punishment of a group by going through the whole history of a user from newest to oldest.
+     *
+     * @param punishments All punishments of the user sorted from oldest to newest.
+     */
+    @Nullable
+    static LastPunishment fromHistory(@Nonnull Punishment[] punishments, char type, long key) {
+        Set<Integer> hidden = new HashSet<>(); // Set of punishment ids that were pardoned and marked as hidden.
+        Map<Integer, Long> pardoned = new HashMap<>(); // Map of punishment ids that were pardoned and not marked as hidden mapped to the date when pardoned.
+        PunishmentRecord record = new PunishmentRecord();
+
+        for (int i = punishments.length - 1; i >= 0; i--) {
+            Punishment p = punishments[i];
+            record.set(p);
+
+            if (record.type == type && keyOf(record) == key) {
+                if (!hidden.contains(p.id)) {
+                    LastPunishment last = new LastPunishment(p.id, p.date, record.duration);
+                    Long pardonDate = pardoned.get(p.id);
+                    if (pardonDate != null) {
+                        last.pardoned = true;
+                        last.pardonDate = pardonDate;
+                    }
+                    return last;
+                }
+            } else if (record.type == 'x' && record.pardonedPunishmentType == type) {
+                if (record.hide)
+                    hidden.add(record.pardonedPunishmentID);
+                else
+                    pardoned.put(record.pardonedPunishmentID, p.date);
+            }
+        }
+        return null;
+    }
+
+    private static long keyOf(@Nonnull PunishmentRecord record) {
+        switch (record.type) {
+            case 'm':
+            case 'b':
+                return record.severity;
+            case 'c':
+                return record.channelID;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * A punishment that later punishments of the same group escalate from.
+     */
+    static class LastPunishment {
+        final int id;
+        final long date;
+        /**
+         * The duration in minutes.
+         */
+        final int duration;
+        boolean pardoned = false;
+        long pardonDate = 0;
+        private char type;
+        private long key;
+
+        private LastPunishment(int id, long date, int duration) {
+            this.id = id;
+            this.date = date;
+            this.duration = duration;
+        }
+
+        /**
+         * @return The date when the punishment ended or will end.
+         */
+        long endDate() {
+            return pardoned ? pardonDate : date + ((long) duration) * 60000;
+        }
+
+        private LastPunishment copy() {
+            LastPunishment copy = new LastPunishment(id, date, duration);
+            copy.pardoned = pardoned;
+            copy.pardonDate = pardonDate;
+            return copy;
+        }
+
+        private static boolean matches(@Nullable LastPunishment a, @Nullable LastPunishment b) {
+            if (a == null || b == null)
+                return a == b;
+            return a.id == b.id && a.date == b.date && a.duration == b.duration && a.pardoned == b.pardoned && a.pardonDate == b.pardonDate;
+        }
+
+        @Override
+        public String toString() {
+            return id + (pardoned ? " pardoned at " + pardonDate : " ending at " + endDate());
+        }
+    }
+
+    /**
+     * The punishments of a user which weren't pardoned with hide grouped by type and severity or channel.
+     */
+    private static class UserHistory {
+        private final HashMap<Character, HashMap<Long, List<LastPunishment>>> groups = new HashMap<>();
+        private final HashMap<Integer, LastPunishment> byId = new HashMap<>();
+
+        void add(@Nonnull PunishmentRecord record) {
+            if (record.type == 'x') {
+                LastPunishment p = byId.get(record.pardonedPunishmentID);
+                if (p == null || p.type != record.pardonedPunishmentType)
+                    return;
+                if (record.hide) {
+                    byId.remove(p.id);
+                    groups.get(p.type).get(p.key).remove(p);
+                } else if (!p.pardoned) {
+                    // The first pardon counts.
+                    p.pardoned = true;
+                    p.pardonDate = record.date;
+                }
+                return;
+            }
+
+            LastPunishment p = new LastPunishment(record.id, record.date, record.duration);
+            p.type = record.type;
+            p.key = keyOf(record);
+            byId.put(p.id, p);
+            groups.computeIfAbsent(p.type, k -> new HashMap<>()).computeIfAbsent(p.key, k -> new ArrayList<>()).add(p);
+        }
+
+        @Nullable
+        LastPunishment getLast(char type, long key) {
+            HashMap<Long, List<LastPunishment>> typeGroups = groups.get(type);
+            List<LastPunishment> group = typeGroups == null ? null : typeGroups.get(key);
+            if (group == null || group.isEmpty())
+                return null;
+            return group.get(group.size() - 1).copy();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.tfred.moderationbot.moderation;
+
+/**
+ * A user and their amount of punishments on the punishment leaderboard.
+ */
+public class LeaderboardEntry {
+    public final long userID;
+    public final int count;
+
+    LeaderboardEntry(long userID, int count) {
+        this.userID = userID;
+        this.count = count;
+    }
+}
@@ -0,0 +1,162 @@
+package com.tfred.moderationbot.moderation;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to int values which stores both in primitive arrays
+ * to avoid boxing every key and value like a {@code HashMap<Long, Integer>} does.
+ * Keys are stored with open addressing and linear probing. Entries with a value of 0 don't get stored.
+ * This class isn't thread safe.
+ */
+class LongIntMap {
+    private static final long FREE = 0;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    // The key 0 is used to mark free slots so it has to be stored separately.
+    private int zeroValue = 0;
+
+    LongIntMap() {
+        this(16);
+    }
+
+    LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize)
+            capacity <<= 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * A consumer for the entries of this map.
+     */
+    interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key The key.
+     * @return The value or 0 if there is no entry for the key.
+     */
+    int get(long key) {
+        if (key == FREE)
+            return zeroValue;
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key)
+                return values[i];
+        }
+        return 0;
+    }
+
+    /**
+     * Add a value to the value of a key. The entry gets removed if its value becomes 0.
+     *
+     * @param key   The key.
+     * @param delta The amount to add.
+     * @return The new value.
+     */
+    int add(long key, int delta) {
+        if (key == FREE) {
+            if (zeroValue == 0 && delta != 0)
+                size++;
+            zeroValue += delta;
+            if (zeroValue == 0 && delta != 0)
+                size--;
+            return zeroValue;
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                values[i] += delta;
+                int value = values[i];
+                if (value == 0)
+                    removeAt(i);
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        if (delta == 0)
+            return 0;
+
+        keys[i] = key;
+        values[i] = delta;
+        if (++size > keys.length * 3 / 4)
+            resize();
+        return delta;
+    }
+
+    /**
+     * @return The amount of entries in this map.
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        zeroValue = 0;
+        size = 0;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        if (zeroValue != 0)
+            consumer.accept(FREE, zeroValue);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE)
+                consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Remove the entry at a slot and move the following entries of the probe sequence back so no gap is left.
+     */
+    private void removeAt(int i) {
+        int mask = keys.length - 1;
+        int free = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != FREE) {
+            int home = slot(keys[j], mask);
+            // Move the entry if its home slot isn't cyclically between the free slot and its current slot.
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[free] = FREE;
+        values[free] = 0;
+        size--;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldValues.length << 1];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = slot(oldKeys[i], mask);
+                while (keys[j] != FREE)
+                    j = (j + 1) & mask;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
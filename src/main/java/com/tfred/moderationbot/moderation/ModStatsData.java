@@ -0,0 +1,262 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The moderator statistics of a guild. These get updated incrementally from the {@link PunishmentLog punishment log}
+ * so the !modstats command doesn't have to go through the whole punishment history.
+ * <p>
+ * Recent punishments are counted in day buckets of the last 30 days which get reused once they are too old.
+ * The statistics are stored in moderations/guildID/modstats.data together with the amount of log entries they include,
+ * which allows them to catch up with the log after a restart without rebuilding them. Changes are written by a background
+ * thread at most every {@link #FLUSH_DELAY} seconds and when the bot shuts down, if that didn't happen the statistics
+ * just catch up with the log again on the next load.
+ * Updates and reads have to hold a lock of the guild in {@link ModerationData}, the methods are additionally synchronized
+ * so the flusher thread sees a consistent state.
+ */
+class ModStatsData {
+    private static final ConcurrentHashMap<Long, ModStatsData> allModStats = new ConcurrentHashMap<>();
+    private static final int DAYS = 30;
+    private static final long DAY = 86400000L;
+    private static final long FLUSH_DELAY = 60;
+    private static final Set<ModStatsData> dirtyModStats = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ModStats flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ModStatsData::flushAll));
+    }
+
+    public final long guildID;
+    private final Path path;
+    private final HashMap<Long, Counters> moderators = new HashMap<>();
+    private int loggedCount = 0;
+
+    private ModStatsData(long guildID) {
+        this.guildID = guildID;
+        this.path = Paths.get("moderations/" + guildID + "/modstats.data");
+
+        if (Files.exists(path)) {
+            try {
+                List<String> lines = Files.readAllLines(path);
+                loggedCount = Integer.parseInt(lines.get(0));
+                for (String line : lines.subList(1, lines.size())) {
+                    Counters counters = Counters.parse(line);
+                    moderators.put(counters.moderatorID, counters);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Failed to read the moderator statistics of guild " + guildID + "! Rebuilding them from the punishment log.");
+                moderators.clear();
+                loggedCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the moderator statistics of a guild. On the first call they get updated with all new entries in the punishment log.
+     * This has to be called while holding a lock of the guild in {@link ModerationData}.
+     *
+     * @param guildID The {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @return The moderator statistics.
+     * @throws IOException If an IO error occurred while reading the punishment log.
+     */
+    static ModStatsData get(long guildID) throws IOException {
+        ModStatsData modStats = allModStats.get(guildID);
+        if (modStats != null)
+            return modStats;
+        synchronized (ModerationData.loadLock(guildID)) {
+            modStats = allModStats.get(guildID);
+            if (modStats == null) {
+                modStats = new ModStatsData(guildID);
+                modStats.update(PunishmentLog.get(guildID));
+                allModStats.put(guildID, modStats);
+            }
+            return modStats;
+        }
+    }
+
+    /**
+     * Count all punishments that were added to the log since the last update and mark the statistics as dirty if anything changed.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     */
+    synchronized void update(@Nonnull PunishmentLog log) throws IOException {
+        if (loggedCount == log.count())
+            return;
+        if (loggedCount > log.count()) {
+            // The log got shorter, so the statistics don't match it anymore.
+            moderators.clear();
+            loggedCount = 0;
+        }
+
+        log.forEach(loggedCount, record -> {
+            int type = ModeratorStats.typeOf(record);
+            if (type != -1)
+                moderators.computeIfAbsent(record.moderatorID, Counters::new).add(type, record.date / DAY);
+        });
+        loggedCount = log.count();
+        markDirty();
+    }
+
+    /**
+     * Write the statistics of all guilds that changed since their last write. This gets called when the bot shuts down.
+     */
+    static void flushAll() {
+        for (ModStatsData modStats : dirtyModStats.toArray(new ModStatsData[0]))
+            modStats.flush();
+    }
+
+    private void markDirty() {
+        if (dirtyModStats.add(this))
+            flusher.schedule(this::flush, FLUSH_DELAY, TimeUnit.SECONDS);
+    }
+
+    private void flush() {
+        // Updates while writing mark the statistics as dirty again and schedule another flush.
+        if (!dirtyModStats.remove(this))
+            return;
+        try {
+            save();
+        } catch (IOException e) {
+            System.out.println("Failed to save the moderator statistics of guild " + guildID + "! " + e.getMessage());
+            markDirty();
+        }
+    }
+
+    private void save() throws IOException {
+        // The flusher and the shutdown hook could write at the same time, the later snapshot has to be written last.
+        synchronized (path) {
+            List<String> lines;
+            synchronized (this) {
+                lines = new ArrayList<>(moderators.size() + 1);
+                lines.add(String.valueOf(loggedCount));
+                for (Counters counters : moderators.values())
+                    lines.add(counters.toString());
+            }
+
+            Files.createDirectories(path.getParent());
+            Path temp = Paths.get(path + ".tmp");
+            Files.write(temp, lines);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Get the current statistics of a moderator.
+     *
+     * @param moderatorID The moderator's {@link net.dv8tion.jda.api.entities.User user} ID.
+     * @return A snapshot of the moderator's statistics.
+     */
+    @Nonnull
+    synchronized ModeratorStats getStats(long moderatorID) {
+        int[] last7Days = new int[ModeratorStats.TYPES];
+        int[] last30Days = new int[ModeratorStats.TYPES];
+        int[] allTime = new int[ModeratorStats.TYPES];
+
+        Counters counters = moderators.get(moderatorID);
+        if (counters != null) {
+            long today = System.currentTimeMillis() / DAY;
+            System.arraycopy(counters.allTime, 0, allTime, 0, ModeratorStats.TYPES);
+            for (int i = 0; i < DAYS; i++) {
+                long age = today - counters.bucketDays[i];
+                if (age < 0 || age >= DAYS)
+                    continue;
+                for (int type = 0; type < ModeratorStats.TYPES; type++) {
+                    if (age < 7)
+                        last7Days[type] += counters.buckets[i][type];
+                    last30Days[type] += counters.buckets[i][type];
+                }
+            }
+        }
+
+        return new ModeratorStats(last7Days, last30Days, allTime);
+    }
+
+    /**
+     * The punishment counters of one moderator.
+     */
+    private static class Counters {
+        final long moderatorID;
+        final int[] allTime = new int[ModeratorStats.TYPES];
+        final long[] bucketDays = new long[DAYS];
+        final int[][] buckets = new int[DAYS][ModeratorStats.TYPES];
+
+        Counters(long moderatorID) {
+            this.moderatorID = moderatorID;
+            for (int i = 0; i < DAYS; i++)
+                bucketDays[i] = Long.MIN_VALUE;
+        }
+
+        /**
+         * Parse a line of format "moderatorID allTime [day:counts]..." where the counts are comma separated.
+         */
+        static Counters parse(String line) {
+            String[] parts = line.split(" ");
+            Counters counters = new Counters(Long.parseLong(parts[0]));
+            parseCounts(parts[1], counters.allTime);
+            for (int i = 2; i < parts.length; i++) {
+                int colon = parts[i].indexOf(':');
+                long day = Long.parseLong(parts[i].substring(0, colon));
+                int slot = (int) Math.floorMod(day, (long) DAYS);
+                counters.bucketDays[slot] = day;
+                parseCounts(parts[i].substring(colon + 1), counters.buckets[slot]);
+            }
+            return counters;
+        }
+
+        private static void parseCounts(String string, int[] counts) {
+            String[] values = string.split(",");
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = Integer.parseInt(values[i]);
+        }
+
+        void add(int type, long day) {
+            allTime[type]++;
+
+            int slot = (int) Math.floorMod(day, (long) DAYS);
+            if (bucketDays[slot] < day) {
+                bucketDays[slot] = day;
+                Arrays.fill(buckets[slot], 0);
+            } else if (bucketDays[slot] > day)
+                return; // Too old for the day buckets.
+            buckets[slot][type]++;
+        }
+
+        private static String countsToString(int[] counts) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < counts.length; i++) {
+                if (i != 0)
+                    sb.append(',');
+                sb.append(counts[i]);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder().append(moderatorID).append(' ').append(countsToString(allTime));
+            long oldest = System.currentTimeMillis() / DAY - DAYS;
+            for (int i = 0; i < DAYS; i++) {
+                if (bucketDays[i] > oldest)
+                    sb.append(' ').append(bucketDays[i]).append(':').append(countsToString(buckets[i]));
+            }
+            return sb.toString();
+        }
+    }
+}
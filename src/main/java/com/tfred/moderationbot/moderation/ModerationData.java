@@ -4,18 +4,38 @@ import net.dv8tion.jda.api.entities.Guild;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Access to the punishment data of all guilds.
+ * Every guild has its own read/write lock so readers of a guild don't block each other
+ * and operations in different guilds never contend.
+ */
 public class ModerationData {
-    //TODO handle synchronization more optimal
-    private static final Object synchronizeObject = new Object();
+    private static final ConcurrentHashMap<Long, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Long, Object> loadLocks = new ConcurrentHashMap<>();
+
+    private static ReentrantReadWriteLock getLock(long guildID) {
+        return locks.computeIfAbsent(guildID, id -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Get the object that the first load of a guild's data synchronizes on, so a guild that is still loading
+     * doesn't block the other guilds.
+     */
+    static Object loadLock(long guildID) {
+        return loadLocks.computeIfAbsent(guildID, id -> new Object());
+    }
+
+    private static Lock readLock(long guildID) {
+        return getLock(guildID).readLock();
+    }
+
+    private static Lock writeLock(long guildID) {
+        return getLock(guildID).writeLock();
+    }
 
     /**
      * Get an array containing the active punishments for a guild.
@@ -26,17 +46,31 @@ public class ModerationData {
      * @return An array of all active punishments in the specified guild.
      */
     public static TimedPunishment[] getActivePunishments(long guildID) throws IOException {
-        synchronized (synchronizeObject) {
-            if (Files.exists(Paths.get("moderations/" + guildID + "/active.punishments"))) {
-                return Files
-                        .readAllLines(Paths.get("moderations/" + guildID + "/active.punishments"))
-                        .stream()
-                        .map(Punishment::parsePunishment)
-                        .filter(p -> (p instanceof TimedPunishment))
-                        .map(p -> (TimedPunishment) p)
-                        .toArray(TimedPunishment[]::new);
-            } else
-                return new TimedPunishment[]{};
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            return ActivePunishments.get(guildID).getAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get an array containing the active punishments for a user in a specified guild.
+     * Changes to this array don't reflect back.
+     * This array contains no null elements.
+     *
+     * @param guildID The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @param userID  The specified {@link net.dv8tion.jda.api.entities.User user's} ID.
+     * @return An array of all active punishments for that user in the specified guild.
+     */
+    public static TimedPunishment[] getActiveUserPunishments(long guildID, long userID) throws IOException {
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            return ActivePunishments.get(guildID).getUserPunishments(userID);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -50,82 +84,148 @@ public class ModerationData {
      * @return An array of all past {@link Punishment punishments} for that user in the specified guild.
      */
     public static Punishment[] getUserPunishments(long guildID, long userID) throws IOException {
-        synchronized (synchronizeObject) {
-            if (Files.exists(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"))) {
-                return Files
-                        .readAllLines(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"))
-                        .stream()
-                        .map(s -> Punishment.parsePunishment(userID, s))
-                        .filter(Objects::nonNull)
-                        .toArray(Punishment[]::new);
-            }
-            else
-                return new Punishment[]{};
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            return PunishmentLog.get(guildID).getUserPunishments(userID);
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Get an array containing all punishments for a guild.
-     * This array contains no null elements.
+     * Get a punishment by its ID.
+     * This only reads the punishment itself from the punishment log so the cost doesn't depend on the amount of punishments in the guild.
      *
-     * @param guildID The guilds ID.
-     * @return An array containing all punishments.
+     * @param guildID      The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @param punishmentID The ID of the punishment.
+     * @return The {@link Punishment punishment} or null if there is none with that ID in the specified guild.
+     */
+    @Nullable
+    public static Punishment getPunishmentById(long guildID, int punishmentID) throws IOException {
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            return PunishmentLog.get(guildID).getPunishment(punishmentID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the punishment statistics of a moderator in a specified guild.
+     *
+     * @param guildID     The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @param moderatorID The moderator's {@link net.dv8tion.jda.api.entities.User user} ID.
+     * @return The {@link ModeratorStats statistics} of the last 7 days, last 30 days and all time.
      */
-    public static Punishment[] getAllPunishments(long guildID) throws IOException {
-        LinkedList<Punishment[]> all = new LinkedList<>();
-        List<Long> ids;
-        synchronized (synchronizeObject) {
-            if (Files.exists(Paths.get("moderations/" + guildID))) {
-                ids = Files
-                        .find(Paths.get("moderations/" + guildID), 1, (p, bfa) -> p.getFileName().toString().matches("\\d+.punishments"))
-                        .map(p -> {
-                            String str = p.getFileName().toString();
-                            return Long.parseLong(str.substring(0, str.length() - 12));
-                        })
-                        .collect(Collectors.toList());
-            } else
-                return new Punishment[]{};
+    public static ModeratorStats getModeratorStats(long guildID, long moderatorID) throws IOException {
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            return ModStatsData.get(guildID).getStats(moderatorID);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        for (Long id : ids) {
+    /**
+     * Get the users with the most punishments in a specified guild. Pardons don't count as punishments.
+     *
+     * @param guildID The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @param days    The time window in days. This can be 7, 30 or 0 for all time.
+     * @return The top 10 users sorted by their amount of punishments.
+     * @throws IllegalArgumentException If there is no time window with the specified amount of days.
+     */
+    public static LeaderboardEntry[] getPunishmentLeaderboard(long guildID, int days) throws IOException {
+        PunishmentLeaderboard leaderboard;
+        Lock lock = readLock(guildID);
+        lock.lock();
+        try {
+            leaderboard = PunishmentLeaderboard.get(guildID);
+        } finally {
+            lock.unlock();
+        }
+
+        long today = System.currentTimeMillis() / PunishmentLeaderboard.DAY;
+        LeaderboardEntry[] top = leaderboard.getTop(days, today);
+        if (top == null) {
+            lock = writeLock(guildID);
+            lock.lock();
             try {
-                all.add(getUserPunishments(guildID, id));
-            } catch (IOException ignored) {
-                System.out.println("Failed to read punishments for user with ID " + id);
+                leaderboard.advance(today);
+            } finally {
+                lock.unlock();
             }
+            top = leaderboard.getTop(days, today);
+        }
+        return top;
+    }
+
+    /**
+     * Get the last punishment of a user in a group which wasn't pardoned with hide. The duration of a new punishment escalates from this one.
+     * This is looked up in the {@link EscalationCache escalation cache} so it doesn't depend on the length of the user's history.
+     *
+     * @param guildID The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @param userID  The specified {@link net.dv8tion.jda.api.entities.User user's} ID.
+     * @param type    The type of the punishment: m, b, c or n.
+     * @param key     The severity for mutes and bans, the channel ID for channel bans and 0 for name punishments.
+     * @return The last punishment or null if there is none.
+     */
+    @Nullable
+    static EscalationCache.LastPunishment getLastPunishment(long guildID, long userID, char type, long key) throws IOException {
+        // Loading a user into the cache changes it, so this needs the write lock.
+        Lock lock = writeLock(guildID);
+        lock.lock();
+        try {
+            return EscalationCache.get(guildID).getLast(PunishmentLog.get(guildID), userID, type, key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Load the punishment log of a guild if it isn't loaded yet.
+     * On the first load the old userID.punishments files get imported into the log.
+     *
+     * @param guildID The guilds ID.
+     * @throws IOException If an IO error occurred while loading or importing the log.
+     */
+    static void loadPunishmentLog(long guildID) throws IOException {
+        Lock lock = writeLock(guildID);
+        lock.lock();
+        try {
+            PunishmentLog.get(guildID);
+        } finally {
+            lock.unlock();
         }
-        return all.stream().flatMap(Arrays::stream).toArray(Punishment[]::new);
     }
 
     /**
-     * Write a punishment to the appropriate userID.punishments and active.punishments files.
+     * Write a punishment to the punishment log and add it to the active punishments.
      *
      * @param guildID    The specified {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
      * @param punishment The punishment to write.
      * @throws IOException If some IO error while creating or writing to the file occurs.
      */
-    protected static void savePunishment(long guildID, Punishment punishment) throws IOException {
-        synchronized (synchronizeObject) {
-            long userID = punishment.userID;
-            if (!Files.exists(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"))) {
-                if (!Files.exists(Paths.get("moderations/" + guildID)))
-                    Files.createDirectories(Paths.get("moderations/" + guildID));
-                Files.createFile(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"));
-            }
-            Files.write(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"), (punishment.toStringWithoutUserID() + '\n').getBytes(), StandardOpenOption.APPEND);
+    protected static void savePunishment(long guildID, TimedPunishment punishment) throws IOException {
+        Lock lock = writeLock(guildID);
+        lock.lock();
+        try {
+            PunishmentLog log = PunishmentLog.get(guildID);
+            log.append(punishment);
 
-            if (!Files.exists(Paths.get("moderations/" + guildID + "/active.punishments")))
-                Files.createFile(Paths.get("moderations/" + guildID + "/active.punishments"));
             try {
-                Files.write(Paths.get("moderations/" + guildID + "/active.punishments"), (punishment.toString() + '\n').getBytes(), StandardOpenOption.APPEND);
+                ActivePunishments.get(guildID).add(punishment);
             } catch (IOException e) {
-                //Delete the last entry from the file above since that one must've worked.
-                List<String> lines = Files.readAllLines(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"));
-                lines.remove(lines.size() - 1);
-                Files.write(Paths.get("moderations/" + guildID + "/" + userID + ".punishments"), lines);
+                //Remove the entry from the log again since that one must've worked.
+                log.removeLast(punishment);
 
                 throw new IOException(e);
             }
+            updateStatistics(guildID);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -136,20 +236,49 @@ public class ModerationData {
      * @param pardonPunishment The pardon punishment.
      */
     protected static void savePardon(long guildID, PardonPunishment pardonPunishment) throws ModerationException {
-        synchronized (synchronizeObject) {
-            if (!Files.exists(Paths.get("moderations/" + guildID + "/" + pardonPunishment.userID + ".punishments")))
-                throw new ModerationException("No punishment file for user with ID " + pardonPunishment.userID + " found.");
-
+        Lock lock = writeLock(guildID);
+        lock.lock();
+        try {
             try {
-                Files.write(Paths.get("moderations/" + guildID + "/" + pardonPunishment.userID + ".punishments"), (pardonPunishment.toStringWithoutUserID() + '\n').getBytes(), StandardOpenOption.APPEND);
+                PunishmentLog log = PunishmentLog.get(guildID);
+                if (!log.hasUser(pardonPunishment.userID))
+                    throw new ModerationException("No punishments for user with ID " + pardonPunishment.userID + " found.");
+
+                log.append(pardonPunishment);
             } catch (IOException e) {
                 throw new ModerationException("An IO error occurred while logging the pardon (<@470696578403794967>)! " + e.getMessage());
             }
+            updateStatistics(guildID);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Update the statistics, the punishment leaderboard and the escalation cache of a guild with the latest entries of its punishment log.
+     * Errors only get printed since all of them catch up with the log the next time a punishment is saved.
+     * This has to be called while holding the write lock of the guild.
+     */
+    private static void updateStatistics(long guildID) {
+        try {
+            ModStatsData.get(guildID).update(PunishmentLog.get(guildID));
+        } catch (IOException e) {
+            System.out.println("Failed to update the moderator statistics of guild " + guildID + "! " + e.getMessage());
+        }
+        try {
+            PunishmentLeaderboard.get(guildID).update(PunishmentLog.get(guildID));
+        } catch (IOException e) {
+            System.out.println("Failed to update the punishment leaderboard of guild " + guildID + "! " + e.getMessage());
+        }
+        try {
+            EscalationCache.get(guildID).update(PunishmentLog.get(guildID));
+        } catch (IOException e) {
+            System.out.println("Failed to update the escalation cache of guild " + guildID + "! " + e.getMessage());
         }
     }
 
     /**
-     * Updates the active.data for the specified guild by removing the specified {@link Punishment punishment} from it.
+     * Remove a punishment from the active punishments of a guild.
      *
      * @param guildID      The specified {@link Guild guild}'s ID.
      * @param punishmentID The ID of the punishment to remove.
@@ -157,27 +286,12 @@ public class ModerationData {
      */
     @Nullable
     protected static TimedPunishment removeActivePunishment(long guildID, int punishmentID) throws IOException {
-        TimedPunishment[] punishments = getActivePunishments(guildID);
-        if (punishments.length == 0)
-            return null;
-
-        TimedPunishment removedPunishment = null;
-        for (TimedPunishment p : punishments) {
-            if (p.id == punishmentID) {
-                removedPunishment = p;
-                synchronized (synchronizeObject) {
-                    Files.write(
-                            Paths.get("moderations/" + guildID + "/active.punishments"),
-                            Arrays.stream(punishments)
-                                    .filter(px -> px.id != punishmentID)
-                                    .map(Punishment::toString)
-                                    .collect(Collectors.toList())
-                    );
-                }
-                break;
-            }
+        Lock lock = writeLock(guildID);
+        lock.lock();
+        try {
+            return ActivePunishments.get(guildID).remove(punishmentID);
+        } finally {
+            lock.unlock();
         }
-
-        return removedPunishment;
     }
 }
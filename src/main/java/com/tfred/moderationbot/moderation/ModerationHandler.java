@@ -228,7 +228,12 @@ public class ModerationHandler {//TODO audit log reasons
         if (old_p == null)
             throw new ModerationException("No matching active punishment with id " + punishmentID + " found.");
 
-        PardonPunishment p = new PardonPunishment(guild.getIdLong(), moderatorID, hide, old_p, reason);
+        PardonPunishment p;
+        try {
+            p = new PardonPunishment(guild.getIdLong(), moderatorID, hide, old_p, reason);
+        } catch (IOException e) {
+            throw new ModerationException("An IO error occurred while reserving a punishment ID (<@470696578403794967>)! " + e.getMessage());
+        }
         ModerationData.savePardon(guild.getIdLong(), p);
         p.log(guild);
 
@@ -239,15 +244,11 @@ public class ModerationHandler {//TODO audit log reasons
         //check if user has other active punishments
         if (!stopAll) {
             try {
-                TimedPunishment[] activePunishments = ModerationData.getActivePunishments(guild.getIdLong());
-                if (!(activePunishments.length == 0))
-                    for (TimedPunishment p : activePunishments) {
-                        if (p.userID == punishment.userID) {
-                            if (punishment.getClass().equals(p.getClass())) {
-                                return "<@" + punishment.userID + "> still has other active punishments of similar type.";
-                            }
-                        }
+                for (TimedPunishment p : ModerationData.getActiveUserPunishments(guild.getIdLong(), punishment.userID)) {
+                    if (punishment.getClass().equals(p.getClass())) {
+                        return "<@" + punishment.userID + "> still has other active punishments of similar type.";
                     }
+                }
             } catch (IOException ignored) {
                 throw new ModerationException("An IO error occurred while checking for other active punishments! User won't be unpunished. Punishment: " + punishment.toString());
             }
@@ -25,44 +25,42 @@ public class ModerationListener extends ListenerAdapter {
 
         try {
             String response = "";
-            for (TimedPunishment p : ModerationData.getActivePunishments(guild.getIdLong())) {
-                if (p.userID == m.getIdLong()) {
-                    if (p instanceof MutePunishment) {
-                        Role mutedRole = guild.getRoleById(serverData.getMutedRole());
-                        if (mutedRole == null)
-                            response = "Please set a muted role with ``!config mutedrole <@role>``!";
-                        else if (!guild.getSelfMember().hasPermission(Permission.MANAGE_ROLES))
-                            response = "The bot is missing the manage roles permission!";
-                        else {
-                            guild.addRoleToMember(m, mutedRole).queue();
-                            response = m.getAsMention() + " is currently muted.";
-                        }
-                    } else if (p instanceof BanPunishment) {
-                        if (!guild.getSelfMember().hasPermission(Permission.BAN_MEMBERS))
-                            response = "The bot is missing the ban members permission!";
-                        else
-                            response = m.getAsMention() + " should be banned!";
-                    } else if (p instanceof ChannelBanPunishment) {
-                        GuildChannel bannedChannel = guild.getGuildChannelById(((ChannelBanPunishment) p).channelID);
-                        if (bannedChannel != null) {
-                            if (!guild.getSelfMember().hasPermission(bannedChannel, Permission.MANAGE_PERMISSIONS))
-                                response = "The bot is missing the manage permissions permission in <#" + bannedChannel.getId() + "> in order to ban <@" + p.userID + "> from it!";
-                            else {
-                                bannedChannel.putPermissionOverride(m).setDeny(Permission.VIEW_CHANNEL).queue();
-                                response = m.getAsMention() + " is currently banned from <#" + bannedChannel.getId() + ">.";
-                            }
-                        }
-                    } else if (p instanceof NamePunishment) {
-                        Role noNickRole = guild.getRoleById(serverData.getNoNicknameRole());
-                        if (noNickRole == null)
-                            response = "Please set a no nickname role with ``!config nonickrole <@role>``!";
-                        else if (!guild.getSelfMember().hasPermission(Permission.MANAGE_ROLES))
-                            response = "The bot is missing the manage roles permission!";
+            for (TimedPunishment p : ModerationData.getActiveUserPunishments(guild.getIdLong(), m.getIdLong())) {
+                if (p instanceof MutePunishment) {
+                    Role mutedRole = guild.getRoleById(serverData.getMutedRole());
+                    if (mutedRole == null)
+                        response = "Please set a muted role with ``!config mutedrole <@role>``!";
+                    else if (!guild.getSelfMember().hasPermission(Permission.MANAGE_ROLES))
+                        response = "The bot is missing the manage roles permission!";
+                    else {
+                        guild.addRoleToMember(m, mutedRole).queue();
+                        response = m.getAsMention() + " is currently muted.";
+                    }
+                } else if (p instanceof BanPunishment) {
+                    if (!guild.getSelfMember().hasPermission(Permission.BAN_MEMBERS))
+                        response = "The bot is missing the ban members permission!";
+                    else
+                        response = m.getAsMention() + " should be banned!";
+                } else if (p instanceof ChannelBanPunishment) {
+                    GuildChannel bannedChannel = guild.getGuildChannelById(((ChannelBanPunishment) p).channelID);
+                    if (bannedChannel != null) {
+                        if (!guild.getSelfMember().hasPermission(bannedChannel, Permission.MANAGE_PERMISSIONS))
+                            response = "The bot is missing the manage permissions permission in <#" + bannedChannel.getId() + "> in order to ban <@" + p.userID + "> from it!";
                         else {
-                            guild.addRoleToMember(m, noNickRole).queue();
-                            response = m.getAsMention() + " is currently blocked from changing their nickname.";
+                            bannedChannel.putPermissionOverride(m).setDeny(Permission.VIEW_CHANNEL).queue();
+                            response = m.getAsMention() + " is currently banned from <#" + bannedChannel.getId() + ">.";
                         }
                     }
+                } else if (p instanceof NamePunishment) {
+                    Role noNickRole = guild.getRoleById(serverData.getNoNicknameRole());
+                    if (noNickRole == null)
+                        response = "Please set a no nickname role with ``!config nonickrole <@role>``!";
+                    else if (!guild.getSelfMember().hasPermission(Permission.MANAGE_ROLES))
+                        response = "The bot is missing the manage roles permission!";
+                    else {
+                        guild.addRoleToMember(m, noNickRole).queue();
+                        response = m.getAsMention() + " is currently blocked from changing their nickname.";
+                    }
                 }
                 if ((!response.isEmpty()) && canWrite)
                     CommandUtils.sendError(channel, response);
@@ -0,0 +1,48 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A snapshot of the punishment counts of a moderator.
+ * Each array is indexed by type: mute(1-5), ban(1-2), channel ban, name punishment and pardon.
+ */
+public class ModeratorStats {
+    public static final int TYPES = 10;
+
+    public final int[] last7Days;
+    public final int[] last30Days;
+    public final int[] allTime;
+
+    ModeratorStats(int[] last7Days, int[] last30Days, int[] allTime) {
+        this.last7Days = last7Days;
+        this.last30Days = last30Days;
+        this.allTime = allTime;
+    }
+
+    /**
+     * Get the statistics type of a punishment.
+     *
+     * @param record The punishment.
+     * @return The index of the type in the statistics arrays or -1 if the punishment isn't counted.
+     */
+    static int typeOf(@Nonnull PunishmentRecord record) {
+        switch (record.type) {
+            case 'm':
+                if (record.severity >= 1 && record.severity <= 5)
+                    return record.severity - 1;
+                return -1;
+            case 'b':
+                if (record.severity == 1 || record.severity == 2)
+                    return record.severity + 4;
+                return -1;
+            case 'c':
+                return 7;
+            case 'n':
+                return 8;
+            case 'x':
+                return 9;
+            default:
+                return -1;
+        }
+    }
+}
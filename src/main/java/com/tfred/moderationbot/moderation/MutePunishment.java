@@ -10,14 +10,13 @@ import org.apache.commons.text.StringEscapeUtils;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class MutePunishment extends TimedPunishment {
+    private static final Pattern PATTERN = Pattern.compile("m (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+    private static final Pattern USER_FILE_PATTERN = Pattern.compile("m (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+
     public final short severity;
 
     /**
@@ -41,38 +40,9 @@ public class MutePunishment extends TimedPunishment {
     }
 
     private static int calculatePunishmentLength(long guildID, long userID, short sev) throws IOException {
-        Punishment[] punishments = ModerationData.getUserPunishments(guildID, userID);
-
-        boolean prev = false; // If there is a previous Mute of the same severity
-        long endDate = 0;    // time till ^ ends
-        int punishmentDuration = 0;     // duration of ^
-        Set<Integer> hidden = new HashSet<>(); // Set of punishment ids that were pardoned and marked as hidden.
-        Map<Integer, Long> pardoned = new HashMap<>(); // Map of punishment ids that were pardoned and not marked as hidden mapped to the date when pardoned.
-        boolean wasPardoned = false;
-
-        for (int i = punishments.length - 1; i >= 0; i--) {
-            Punishment p = punishments[i];
-
-            if ((p instanceof MutePunishment) && (((MutePunishment) p).severity == sev)) {
-                if (!hidden.contains(p.id)) {
-                    prev = true;
-                    endDate = p.date + (((long) ((MutePunishment) p).duration) * 60000);
-                    punishmentDuration = ((MutePunishment) p).duration;
-                    if (pardoned.containsKey(p.id)) {
-                        wasPardoned = true;
-                        endDate = pardoned.get(p.id);
-                    }
-                    break;
-                }
-            } else if ((p instanceof PardonPunishment) && (((PardonPunishment) p).pardonedPunishmentType == 'm')) {
-                if (((PardonPunishment) p).hide)
-                    hidden.add(((PardonPunishment) p).pardonedPunishmentID);
-                else
-                    pardoned.put(((PardonPunishment) p).pardonedPunishmentID, p.date);
-            }
-        }
+        EscalationCache.LastPunishment last = ModerationData.getLastPunishment(guildID, userID, 'm', sev);
 
-        if (!prev) {
+        if (last == null) {
             switch (sev) {
                 case 1:
                     return 60;
@@ -89,13 +59,13 @@ public class MutePunishment extends TimedPunishment {
             }
         }
 
-        long timeSinceEnded = (System.currentTimeMillis() - endDate); //time since last punishment ended
+        long timeSinceEnded = (System.currentTimeMillis() - last.endDate()); //time since last punishment ended
 
-        if (timeSinceEnded < 0 && !wasPardoned)
-            return punishmentDuration;
+        if (timeSinceEnded < 0 && !last.pardoned)
+            return last.duration;
 
         if (timeSinceEnded < 172800000L)
-            return punishmentDuration * 2;
+            return last.duration * 2;
 
         long bonusReqTime;
         int bonusAdditionalTime;
@@ -133,9 +103,9 @@ public class MutePunishment extends TimedPunishment {
         }
 
         if (timeSinceEnded < bonusReqTime)
-            return punishmentDuration + bonusAdditionalTime;
+            return last.duration + bonusAdditionalTime;
         else
-            return punishmentDuration + normalAdditionalTime;
+            return last.duration + normalAdditionalTime;
     }
 
     /**
@@ -148,8 +118,7 @@ public class MutePunishment extends TimedPunishment {
      */
     @Nullable
     public static MutePunishment parseMutePunishment(long userID, String string) {
-        Pattern p = Pattern.compile("m (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = USER_FILE_PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -178,8 +147,7 @@ public class MutePunishment extends TimedPunishment {
      */
     @Nullable
     public static MutePunishment parseMutePunishment(String string) {
-        Pattern p = Pattern.compile("m (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -10,14 +10,13 @@ import org.apache.commons.text.StringEscapeUtils;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class NamePunishment extends TimedPunishment {
+    private static final Pattern PATTERN = Pattern.compile("n (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+    private static final Pattern USER_FILE_PATTERN = Pattern.compile("n (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
+
     /**
      * Create a new name punishment. The punishment ID, date and duration get assigned automatically.
      *
@@ -36,49 +35,20 @@ public class NamePunishment extends TimedPunishment {
     }
 
     private static int calculatePunishmentLength(long guildID, long userID) throws IOException {
-        Punishment[] punishments = ModerationData.getUserPunishments(guildID, userID);
-
-        boolean prev = false; // If there is a previous name punishment of the same severity
-        long endDate = 0;    // time till ^ ends
-        int punishmentDuration = 0;     // duration of ^
-        Set<Integer> hidden = new HashSet<>(); // Set of punishment ids that were pardoned and marked as hidden.
-        Map<Integer, Long> pardoned = new HashMap<>(); // Map of punishment ids that were pardoned and not marked as hidden mapped to the date when pardoned.
-        boolean wasPardoned = false;
-
-        for (int i = punishments.length - 1; i >= 0; i--) {
-            Punishment p = punishments[i];
-
-            if (p instanceof NamePunishment) {
-                if (!hidden.contains(p.id)) {
-                    prev = true;
-                    endDate = p.date + (((long) ((NamePunishment) p).duration) * 60000);
-                    punishmentDuration = ((NamePunishment) p).duration;
-                    if (pardoned.containsKey(p.id)) {
-                        wasPardoned = true;
-                        endDate = pardoned.get(p.id);
-                    }
-                    break;
-                }
-            } else if ((p instanceof PardonPunishment) && (((PardonPunishment) p).pardonedPunishmentType == 'n')) {
-                if (((PardonPunishment) p).hide)
-                    hidden.add(((PardonPunishment) p).pardonedPunishmentID);
-                else
-                    pardoned.put(((PardonPunishment) p).pardonedPunishmentID, p.date);
-            }
-        }
+        EscalationCache.LastPunishment last = ModerationData.getLastPunishment(guildID, userID, 'n', 0);
 
-        if (!prev) {
+        if (last == null) {
             return 10080;
         }
 
-        long timeSinceEnded = (System.currentTimeMillis() - endDate); //time since last punishment ended
+        long timeSinceEnded = (System.currentTimeMillis() - last.endDate()); //time since last punishment ended
 
-        if (timeSinceEnded < 0 && !wasPardoned)
-            return punishmentDuration;
+        if (timeSinceEnded < 0 && !last.pardoned)
+            return last.duration;
         else if (timeSinceEnded < 172800000L)
-            return punishmentDuration * 2;
+            return last.duration * 2;
         else {
-            return punishmentDuration + 10080;
+            return last.duration + 10080;
         }
     }
 
@@ -92,8 +62,7 @@ public class NamePunishment extends TimedPunishment {
      */
     @Nullable
     public static NamePunishment parseNamePunishment(long userID, String string) {
-        Pattern p = Pattern.compile("n (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = USER_FILE_PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -121,8 +90,7 @@ public class NamePunishment extends TimedPunishment {
      */
     @Nullable
     public static NamePunishment parseNamePunishment(String string) {
-        Pattern p = Pattern.compile("n (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -6,9 +6,11 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class OldPunishment {
+    private static final Pattern PATTERN = Pattern.compile("(\\d+): (\\d+) (.) (\\d+) (-?\\d+) (\\d+) (.*)");
+    private static final Pattern USER_FILE_PATTERN = Pattern.compile("(\\d+) (.) (\\d+) (-?\\d+) (\\d+) (.*)");
+
     public static Punishment parseOldPunishment(String string) {
-        Pattern p = Pattern.compile("(\\d+): (\\d+) (.) (\\d+) (-?\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -67,8 +69,7 @@ public class OldPunishment {
     }
 
     public static Punishment parseOldPunishment(long userID, String string)  {
-        Pattern p = Pattern.compile("(\\d+) (.) (\\d+) (-?\\d+) (\\d+) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = USER_FILE_PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -119,8 +120,8 @@ public class OldPunishment {
                             StringEscapeUtils.unescapeJava(m.group(6))
                     );
                 case "u":
-                    Pattern p2 = Pattern.compile("([y,n]) (\\d+) (.) (.*)");
-                    Matcher m2 = p.matcher(m.group(6));
+                    // The pardon reason is matched with the user file pattern like it always was, so old pardons practically never get imported.
+                    Matcher m2 = USER_FILE_PATTERN.matcher(m.group(6));
                     if (!m2.find())
                         return null;
 
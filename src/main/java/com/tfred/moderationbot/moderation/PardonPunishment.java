@@ -10,11 +10,15 @@ import net.dv8tion.jda.api.entities.TextChannel;
 import org.apache.commons.text.StringEscapeUtils;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class PardonPunishment extends Punishment {
+    private static final Pattern PATTERN = Pattern.compile("x (\\d+) (\\d+) (\\d+) (\\d+) (\\d) (\\d+) (.) (.*)");
+    private static final Pattern USER_FILE_PATTERN = Pattern.compile("x (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.) (.*)");
+
     public final boolean hide;
     public final int pardonedPunishmentID;
     public final char pardonedPunishmentType;
@@ -27,8 +31,9 @@ public class PardonPunishment extends Punishment {
      * @param hide        Whether to hide the pardoned punishment from future punishments.
      * @param punishment  The punishment to pardon.
      * @param reason      The reason for this channel ban.
+     * @throws IOException If an IO exception occurred while reserving the punishment ID.
      */
-    PardonPunishment(long guildID, long moderatorID, boolean hide, TimedPunishment punishment, String reason) {
+    PardonPunishment(long guildID, long moderatorID, boolean hide, TimedPunishment punishment, String reason) throws IOException {
         super(guildID, punishment.userID, moderatorID, reason);
         this.hide = hide;
         this.pardonedPunishmentID = punishment.id;
@@ -52,8 +57,7 @@ public class PardonPunishment extends Punishment {
      */
     @Nullable
     public static PardonPunishment parsePardonPunishment(long userID, String string) {
-        Pattern p = Pattern.compile("x (\\d+) (\\d+) (\\d+) (\\d+) (\\d+) (.) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = USER_FILE_PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -83,8 +87,7 @@ public class PardonPunishment extends Punishment {
      */
     @Nullable
     public static PardonPunishment parsePardonPunishment(String string) {
-        Pattern p = Pattern.compile("x (\\d+) (\\d+) (\\d+) (\\d+) (\\d) (\\d+) (.) (.*)");
-        Matcher m = p.matcher(string);
+        Matcher m = PATTERN.matcher(string);
 
         if (!m.find())
             return null;
@@ -5,6 +5,8 @@ import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 
+import java.io.IOException;
+
 public abstract class Punishment {
     public final long userID;
     public final int id;
@@ -15,7 +17,7 @@ public abstract class Punishment {
     public final long moderatorID;
     public final String reason;
 
-    protected Punishment(long guildID, long userID, long moderatorID, String reason) {
+    protected Punishment(long guildID, long userID, long moderatorID, String reason) throws IOException {
         this(
                 userID,
                 ServerData.get(guildID).getNextPunishmentID(),
@@ -41,6 +43,10 @@ public abstract class Punishment {
      * @return A Punishment. If the format is invalid null is returned.
      */
     protected static Punishment parsePunishment(String string) {
+        Punishment punishment = PunishmentParser.parse(string);
+        if (punishment != null)
+            return punishment;
+
         switch (string.charAt(0)) {
             case 'm':
                 return MutePunishment.parseMutePunishment(string);
@@ -66,6 +72,10 @@ public abstract class Punishment {
      * @return A Punishment. If the format is invalid null is returned.
      */
     protected static Punishment parsePunishment(long userID, String string) {
+        Punishment punishment = PunishmentParser.parse(userID, string);
+        if (punishment != null)
+            return punishment;
+
         switch (string.charAt(0)) {
             case 'm':
                 return MutePunishment.parseMutePunishment(userID, string);
@@ -0,0 +1,229 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The format in which the {@link PunishmentLog punishment log} stores its entries.
+ * <p>
+ * {@link #TEXT} stores one {@link Punishment#toString() punishment string} per line in punishments.log.
+ * {@link #BINARY} stores records in punishments.bin consisting of a fixed size part with the type, user ID,
+ * punishment ID, date, moderator ID and the type specific values followed by the length prefixed UTF-8 reason.
+ * <p>
+ * Entries are decoded straight from a {@link ByteBuffer}, usually the memory mapped log, using absolute reads only,
+ * so the same buffer can be read by multiple threads. The reason of an entry only gets decoded if it is needed.
+ */
+abstract class PunishmentCodec {
+    static final PunishmentCodec TEXT = new TextCodec();
+    static final PunishmentCodec BINARY = new BinaryCodec();
+
+    /**
+     * The name of the log file in moderations/guildID/.
+     */
+    abstract String fileName();
+
+    /**
+     * The amount of bytes after each entry which don't belong to the entry itself, for example a line break.
+     */
+    abstract int separatorLength();
+
+    /**
+     * Encode a punishment.
+     *
+     * @param p The punishment.
+     * @return The entry followed by the separator.
+     */
+    @Nonnull
+    abstract byte[] encode(@Nonnull Punishment p);
+
+    /**
+     * Get the length of the entry starting at a position.
+     *
+     * @param data The data.
+     * @param pos  The start of the entry.
+     * @param end  The end of the valid data.
+     * @return The length of the entry without the separator or -1 if the entry isn't complete or the data ends
+     * with zero padding here (no entry starts with a zero byte).
+     */
+    abstract int entryLength(@Nonnull ByteBuffer data, int pos, int end);
+
+    /**
+     * Decode an entry into a record.
+     *
+     * @param data   The data.
+     * @param pos    The start of the entry.
+     * @param length The length of the entry without the separator.
+     * @param record The record to fill.
+     * @return False if the entry is invalid.
+     */
+    abstract boolean decode(@Nonnull ByteBuffer data, int pos, int length, @Nonnull PunishmentRecord record);
+
+    /**
+     * Get a codec by its name.
+     *
+     * @param name The name, either "text" or "binary".
+     * @return The codec or null if there is none with that name.
+     */
+    @Nullable
+    static PunishmentCodec forName(@Nonnull String name) {
+        switch (name.toLowerCase()) {
+            case "text":
+                return TEXT;
+            case "binary":
+                return BINARY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The codec new punishment logs get created with. This can be set with the PUNISHMENT_LOG_FORMAT environment variable.
+     */
+    @Nonnull
+    static PunishmentCodec getDefault() {
+        String name = System.getenv("PUNISHMENT_LOG_FORMAT");
+        if (name == null)
+            return TEXT;
+        PunishmentCodec codec = forName(name);
+        if (codec == null) {
+            System.out.println("Unknown punishment log format \"" + name + "\"! Using text.");
+            return TEXT;
+        }
+        return codec;
+    }
+
+    private static class TextCodec extends PunishmentCodec {
+        @Override
+        String fileName() {
+            return "punishments.log";
+        }
+
+        @Override
+        int separatorLength() {
+            return 1;
+        }
+
+        @Nonnull
+        @Override
+        byte[] encode(@Nonnull Punishment p) {
+            return (p.toString() + '\n').getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        int entryLength(@Nonnull ByteBuffer data, int pos, int end) {
+            if (pos < end && data.get(pos) == 0)
+                return -1;
+            for (int i = pos; i < end; i++) {
+                if (data.get(i) == '\n')
+                    return i - pos;
+            }
+            return -1;
+        }
+
+        @Override
+        boolean decode(@Nonnull ByteBuffer data, int pos, int length, @Nonnull PunishmentRecord record) {
+            if (length == 0)
+                return false;
+            if (PunishmentParser.parse(data, pos, length, record))
+                return true;
+
+            byte[] line = new byte[length];
+            ByteBuffer buffer = data.duplicate();
+            buffer.position(pos);
+            buffer.get(line);
+            Punishment p = Punishment.parsePunishment(new String(line, StandardCharsets.UTF_8));
+            if (!(p instanceof TimedPunishment) && !(p instanceof PardonPunishment))
+                return false;
+            record.set(p);
+            return true;
+        }
+    }
+
+    private static class BinaryCodec extends PunishmentCodec {
+        // type, user ID, punishment ID, date, moderator ID, severity/channel ID/hide, duration/pardoned ID, pardoned type, reason length
+        private static final int HEADER_SIZE = 1 + 8 + 4 + 8 + 8 + 8 + 4 + 2 + 4;
+
+        @Override
+        String fileName() {
+            return "punishments.bin";
+        }
+
+        @Override
+        int separatorLength() {
+            return 0;
+        }
+
+        @Nonnull
+        @Override
+        byte[] encode(@Nonnull Punishment p) {
+            PunishmentRecord record = new PunishmentRecord();
+            record.set(p);
+            byte[] reason = p.reason.getBytes(StandardCharsets.UTF_8);
+
+            long value = 0;
+            int value2 = record.duration;
+            if (record.type == 'm' || record.type == 'b')
+                value = record.severity;
+            else if (record.type == 'c')
+                value = record.channelID;
+            else if (record.type == 'x') {
+                value = record.hide ? 1 : 0;
+                value2 = record.pardonedPunishmentID;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + reason.length)
+                    .put((byte) record.type)
+                    .putLong(record.userID)
+                    .putInt(record.id)
+                    .putLong(record.date)
+                    .putLong(record.moderatorID)
+                    .putLong(value)
+                    .putInt(value2)
+                    .putChar(record.pardonedPunishmentType)
+                    .putInt(reason.length)
+                    .put(reason);
+            return buffer.array();
+        }
+
+        @Override
+        int entryLength(@Nonnull ByteBuffer data, int pos, int end) {
+            if (end - pos < HEADER_SIZE || data.get(pos) == 0)
+                return -1;
+            int reasonLength = data.getInt(pos + HEADER_SIZE - 4);
+            if (reasonLength < 0 || reasonLength > end - pos - HEADER_SIZE)
+                return -1;
+            return HEADER_SIZE + reasonLength;
+        }
+
+        @Override
+        boolean decode(@Nonnull ByteBuffer data, int pos, int length, @Nonnull PunishmentRecord record) {
+            if (length < HEADER_SIZE)
+                return false;
+            char type = (char) data.get(pos);
+            if (type != 'm' && type != 'b' && type != 'c' && type != 'n' && type != 'x')
+                return false;
+
+            record.type = type;
+            record.userID = data.getLong(pos + 1);
+            record.id = data.getInt(pos + 9);
+            record.date = data.getLong(pos + 13);
+            record.moderatorID = data.getLong(pos + 21);
+            long value = data.getLong(pos + 29);
+            int value2 = data.getInt(pos + 37);
+            record.pardonedPunishmentType = data.getChar(pos + 41);
+            int reasonLength = data.getInt(pos + 43);
+            if (reasonLength != length - HEADER_SIZE)
+                return false;
+
+            record.severity = (type == 'm' || type == 'b') ? (short) value : 0;
+            record.channelID = type == 'c' ? value : 0;
+            record.hide = type == 'x' && value == 1;
+            record.duration = type == 'x' ? 0 : value2;
+            record.pardonedPunishmentID = type == 'x' ? value2 : 0;
+            record.setReason(data, pos + HEADER_SIZE, reasonLength, false);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The punishment leaderboard of a guild. The punishment counts of all users and the top users get updated
+ * incrementally from the {@link PunishmentLog punishment log} so the !punishlb command doesn't have to count
+ * and sort the whole punishment history. Pardons don't count as punishments.
+ * <p>
+ * Besides the all time counts the leaderboard also keeps the counts of the last 7 and 30 days. These are built
+ * from day buckets which get subtracted again once they leave the time window.
+ * The top users are published as immutable snapshots so they can be read while other threads update the counts.
+ * Everything else isn't thread safe, synchronization is handled by {@link ModerationData}.
+ */
+class PunishmentLeaderboard {
+    static final int SIZE = 10;
+    private static final ConcurrentHashMap<Long, PunishmentLeaderboard> allLeaderboards = new ConcurrentHashMap<>();
+    private static final int DAYS = 30;
+    static final long DAY = 86400000L;
+
+    public final long guildID;
+    private final Counts allTime = new Counts(0);
+    private final Counts[] windows = {new Counts(7), new Counts(DAYS)};
+    private final long[] bucketDays = new long[DAYS];
+    private final LongIntMap[] buckets = new LongIntMap[DAYS];
+    private long today = Long.MIN_VALUE;
+    private int loggedCount = 0;
+    private volatile Snapshot snapshot = null;
+
+    private PunishmentLeaderboard(long guildID) {
+        this.guildID = guildID;
+        clear();
+    }
+
+    /**
+     * Get the punishment leaderboard of a guild. It gets built from the whole punishment log on the first call.
+     * This has to be called while holding a lock of the guild in {@link ModerationData}.
+     *
+     * @param guildID The {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @return The punishment leaderboard.
+     * @throws IOException If an IO error occurred while reading the punishment log.
+     */
+    static PunishmentLeaderboard get(long guildID) throws IOException {
+        PunishmentLeaderboard leaderboard = allLeaderboards.get(guildID);
+        if (leaderboard != null)
+            return leaderboard;
+        synchronized (ModerationData.loadLock(guildID)) {
+            leaderboard = allLeaderboards.get(guildID);
+            if (leaderboard == null) {
+                leaderboard = new PunishmentLeaderboard(guildID);
+                leaderboard.update(PunishmentLog.get(guildID));
+                allLeaderboards.put(guildID, leaderboard);
+            }
+            return leaderboard;
+        }
+    }
+
+    private void clear() {
+        allTime.clear();
+        for (Counts window : windows)
+            window.clear();
+        for (int i = 0; i < DAYS; i++) {
+            bucketDays[i] = Long.MIN_VALUE;
+            buckets[i] = new LongIntMap();
+        }
+        today = Long.MIN_VALUE;
+        loggedCount = 0;
+    }
+
+    /**
+     * Count all punishments that were added to the log since the last update.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     */
+    void update(@Nonnull PunishmentLog log) throws IOException {
+        if (loggedCount == log.count() && snapshot != null)
+            return;
+        if (loggedCount > log.count()) {
+            // The log got shorter, so the counts don't match it anymore.
+            clear();
+        }
+
+        log.forEach(loggedCount, record -> {
+            if (record.type != 'x')
+                add(record.userID, record.date / DAY);
+        });
+        loggedCount = log.count();
+        publish();
+    }
+
+    private void add(long userID, long day) {
+        allTime.increment(userID);
+
+        moveWindows(day);
+        if (day <= today - DAYS)
+            return; // Too old for the day buckets.
+
+        int slot = (int) Math.floorMod(day, (long) DAYS);
+        if (bucketDays[slot] != day) {
+            bucketDays[slot] = day;
+            buckets[slot].clear();
+        }
+        buckets[slot].add(userID, 1);
+        for (Counts window : windows) {
+            if (day > today - window.days)
+                window.increment(userID);
+        }
+    }
+
+    /**
+     * Move the time windows forward to a day and publish the new top users.
+     * This has to be called while holding the write lock of the guild in {@link ModerationData}.
+     *
+     * @param day The day as days since the epoch.
+     */
+    void advance(long day) {
+        if (day > today) {
+            moveWindows(day);
+            publish();
+        }
+    }
+
+    /**
+     * Move the time windows forward to a day by subtracting the day buckets that leave them.
+     */
+    private void moveWindows(long day) {
+        if (day <= today)
+            return;
+
+        if (today == Long.MIN_VALUE || day - today >= DAYS) {
+            // Everything in the windows is too old now.
+            for (Counts window : windows)
+                window.clear();
+            for (int i = 0; i < DAYS; i++) {
+                bucketDays[i] = Long.MIN_VALUE;
+                buckets[i].clear();
+            }
+        } else {
+            for (Counts window : windows) {
+                boolean changed = false;
+                for (long d = today + 1; d <= day; d++) {
+                    long leaving = d - window.days;
+                    int slot = (int) Math.floorMod(leaving, (long) DAYS);
+                    if (bucketDays[slot] == leaving && buckets[slot].size() != 0) {
+                        buckets[slot].forEach((userID, count) -> window.counts.add(userID, -count));
+                        changed = true;
+                    }
+                }
+                if (changed)
+                    window.rebuildTop();
+            }
+        }
+        today = day;
+    }
+
+    /**
+     * Copy the current top users into a new immutable snapshot which can be read without holding a lock.
+     */
+    private void publish() {
+        LeaderboardEntry[][] tops = new LeaderboardEntry[windows.length + 1][];
+        tops[0] = allTime.getTop();
+        for (int i = 0; i < windows.length; i++)
+            tops[i + 1] = windows[i].getTop();
+        snapshot = new Snapshot(today, tops);
+    }
+
+    /**
+     * Get the users with the most punishments.
+     *
+     * @param days  The time window in days. This can be 7, 30 or 0 for all time.
+     * @param today The current day as days since the epoch.
+     * @return The top users sorted by their amount of punishments or null if the time window first has to be
+     * {@link #advance(long) moved forward} to today.
+     * @throws IllegalArgumentException If there is no time window with the specified amount of days.
+     */
+    @Nullable
+    LeaderboardEntry[] getTop(int days, long today) {
+        Snapshot snapshot = this.snapshot;
+        if (days == 0)
+            return snapshot.tops[0].clone();
+
+        for (int i = 0; i < windows.length; i++) {
+            if (windows[i].days == days)
+                return snapshot.day < today ? null : snapshot.tops[i + 1].clone();
+        }
+        throw new IllegalArgumentException("No punishment leaderboard for " + days + " days.");
+    }
+
+    /**
+     * The punishment counts of all users in a time window together with the users that have the highest counts.
+     * Since counts only go up between rebuilds the top users can be kept up to date by only looking at the user whose count changed.
+     */
+    private static class Counts {
+        final int days;
+        final LongIntMap counts = new LongIntMap();
+        final long[] topUsers = new long[SIZE];
+        final int[] topCounts = new int[SIZE];
+        int topSize = 0;
+
+        Counts(int days) {
+            this.days = days;
+        }
+
+        void clear() {
+            counts.clear();
+            topSize = 0;
+        }
+
+        void increment(long userID) {
+            offer(userID, counts.add(userID, 1));
+        }
+
+        LeaderboardEntry[] getTop() {
+            LeaderboardEntry[] top = new LeaderboardEntry[topSize];
+            for (int i = 0; i < topSize; i++)
+                top[i] = new LeaderboardEntry(topUsers[i], topCounts[i]);
+            return top;
+        }
+
+        void rebuildTop() {
+            topSize = 0;
+            counts.forEach(this::offer);
+        }
+
+        /**
+         * Update the position of a user in the top users after their count increased.
+         */
+        private void offer(long userID, int count) {
+            int i = 0;
+            while (i < topSize && topUsers[i] != userID)
+                i++;
+            if (i == topSize) {
+                if (topSize < SIZE)
+                    topSize++;
+                else if (count > topCounts[SIZE - 1])
+                    i = SIZE - 1;
+                else
+                    return;
+            }
+
+            // Move the user up past everyone with a lower count.
+            while (i > 0 && topCounts[i - 1] < count) {
+                topUsers[i] = topUsers[i - 1];
+                topCounts[i] = topCounts[i - 1];
+                i--;
+            }
+            topUsers[i] = userID;
+            topCounts[i] = count;
+        }
+    }
+
+    private static class Snapshot {
+        final long day;
+        final LeaderboardEntry[][] tops;
+
+        Snapshot(long day, LeaderboardEntry[][] tops) {
+            this.day = day;
+            this.tops = tops;
+        }
+    }
+}
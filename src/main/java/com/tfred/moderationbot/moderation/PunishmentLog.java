@@ -0,0 +1,418 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of all punishments of a guild together with an in-memory index by punishment and user ID.
+ * The log is stored in moderations/guildID/ in one of the {@link PunishmentCodec formats}: punishments.log with one
+ * {@link Punishment#toString() punishment} per line or punishments.bin with binary records.
+ * If no log exists yet one gets created in the {@link PunishmentCodec#getDefault() default format}
+ * and the old userID.punishments files of that guild get imported into it.
+ * <p>
+ * The index is persisted in moderations/guildID/punishments.idx as fixed size records of
+ * punishment ID, user ID, moderator ID, log offset and length so loading it doesn't require parsing the log.
+ * Entries the index file is missing (for example after a crash) get rebuilt from the end of the log.
+ * <p>
+ * The log is memory mapped and every read decodes straight from the mapped region, so scans don't copy the log
+ * and only the punishments that are actually returned get created as objects.
+ * The mapping has room to grow (the file gets padded with zeros) and is only replaced once an append doesn't fit anymore,
+ * then with twice the capacity. The file never gets truncated while it is mapped: {@link #size} is the end of the log and
+ * removed entries are overwritten with zeros, which the {@link PunishmentCodec codecs} treat as the end of the data.
+ * This class isn't thread safe, synchronization is handled by {@link ModerationData}.
+ */
+class PunishmentLog {
+    private static final ConcurrentHashMap<Long, PunishmentLog> allLogs = new ConcurrentHashMap<>();
+    private static final int INDEX_RECORD_SIZE = 32;
+    private static final int MIN_CAPACITY = 65536;
+
+    public final long guildID;
+    private final PunishmentCodec codec;
+    private final FileChannel channel;
+    private final FileChannel indexChannel;
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final HashMap<Integer, Entry> idIndex = new HashMap<>();
+    private final HashMap<Long, List<Entry>> userIndex = new HashMap<>();
+    private long size = 0;
+    private long capacity = 0;
+    private long indexSize = 0;
+    private MappedByteBuffer data;
+
+    private PunishmentLog(long guildID) throws IOException {
+        this.guildID = guildID;
+
+        Path dir = Paths.get("moderations/" + guildID);
+        if (Files.exists(dir.resolve(PunishmentCodec.BINARY.fileName())))
+            codec = PunishmentCodec.BINARY;
+        else if (Files.exists(dir.resolve(PunishmentCodec.TEXT.fileName())))
+            codec = PunishmentCodec.TEXT;
+        else
+            codec = PunishmentCodec.getDefault();
+
+        Path path = dir.resolve(codec.fileName());
+        if (!Files.exists(path)) {
+            if (!Files.isDirectory(dir))
+                Files.createDirectories(dir);
+            importUserFiles(dir, path, codec);
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(dir.resolve("punishments.idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadIndexFile();
+        long fileSize = channel.size();
+        data = map(Math.max(fileSize, MIN_CAPACITY));
+        indexLog((int) fileSize);
+        // Remove the rest of an interrupted append, so it can't look like an entry once a shorter one was appended.
+        int last = (int) fileSize - 1;
+        while (last >= size && data.get(last) == 0)
+            last--;
+        if (last >= size)
+            clear(size, last + 1);
+    }
+
+    /**
+     * Get the punishment log of a guild. The log gets loaded and indexed on the first call.
+     *
+     * @param guildID The {@link net.dv8tion.jda.api.entities.Guild guild's} ID.
+     * @return The punishment log.
+     * @throws IOException If an IO error occurred while loading the log.
+     */
+    static PunishmentLog get(long guildID) throws IOException {
+        PunishmentLog log = allLogs.get(guildID);
+        if (log != null)
+            return log;
+        synchronized (ModerationData.loadLock(guildID)) {
+            log = allLogs.get(guildID);
+            if (log == null) {
+                log = new PunishmentLog(guildID);
+                allLogs.put(guildID, log);
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Writes all punishments from the userID.punishments files into a new log sorted by punishment ID.
+     * The log is first written to a temporary file so an interrupted import doesn't leave a partial log behind.
+     */
+    private static void importUserFiles(Path dir, Path path, PunishmentCodec codec) throws IOException {
+        List<Path> userFiles;
+        try (Stream<Path> files = Files.find(dir, 1, (p, bfa) -> p.getFileName().toString().matches("\\d+.punishments"))) {
+            userFiles = files.collect(Collectors.toList());
+        }
+
+        List<Punishment> punishments = new ArrayList<>();
+        for (Path p : userFiles) {
+            String str = p.getFileName().toString();
+            long userID = Long.parseLong(str.substring(0, str.length() - 12));
+            for (String line : Files.readAllLines(p)) {
+                if (line.isEmpty())
+                    continue;
+                Punishment punishment = Punishment.parsePunishment(userID, line);
+                if (punishment == null)
+                    System.out.println("Skipped invalid punishment while importing " + str + ": " + line);
+                else
+                    punishments.add(punishment);
+            }
+        }
+        punishments.sort(Comparator.comparingInt(p -> p.id));
+
+        Path temp = Paths.get(path + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            for (Punishment p : punishments)
+                out.write(codec.encode(p));
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!userFiles.isEmpty())
+            System.out.println("Imported " + punishments.size() + " punishments from " + userFiles.size() + " files into the punishment log of guild " + dir.getFileName() + ".");
+    }
+
+    /**
+     * Load all valid records from the index file. Records after the first invalid one get discarded.
+     */
+    private void loadIndexFile() throws IOException {
+        long logSize = channel.size();
+        ByteBuffer buffer = readFully(indexChannel, 0, (int) (indexChannel.size() - indexChannel.size() % INDEX_RECORD_SIZE));
+
+        while (buffer.remaining() >= INDEX_RECORD_SIZE) {
+            int id = buffer.getInt();
+            long userID = buffer.getLong();
+            buffer.getLong(); // The moderator ID isn't indexed in memory.
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+
+            if (offset < size || length <= 0 || offset + length + codec.separatorLength() > logSize) {
+                System.out.println("Invalid record in the punishment index of guild " + guildID + "! Rebuilding the index from offset " + size + ".");
+                break;
+            }
+            index(id, userID, new Entry(offset, length));
+            size = offset + length + codec.separatorLength();
+            indexSize += INDEX_RECORD_SIZE;
+        }
+        if (indexChannel.size() > indexSize)
+            indexChannel.truncate(indexSize);
+    }
+
+    /**
+     * Index all entries of the log that come after the last indexed entry.
+     */
+    private void indexLog(int end) throws IOException {
+        PunishmentRecord record = new PunishmentRecord();
+
+        int pos = (int) size;
+        int length;
+        // An incomplete entry at the end means the last append got interrupted.
+        while ((length = codec.entryLength(data, pos, end)) != -1) {
+            if (codec.decode(data, pos, length, record)) {
+                Entry entry = new Entry(pos, length);
+                writeIndexRecord(record.id, record.userID, record.moderatorID, entry);
+                index(record.id, record.userID, entry);
+            } else if (length > 0)
+                System.out.println("Invalid entry at offset " + pos + " in the punishment log of guild " + guildID + "!");
+            pos += length + codec.separatorLength();
+        }
+        size = pos;
+    }
+
+    /**
+     * Map the first bytes of the log read-only, the file gets extended with zeros if it is shorter.
+     * Entries are addressed with int offsets so the log can't grow beyond 2 GB.
+     */
+    private MappedByteBuffer map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("The punishment log of guild " + guildID + " is too large to be mapped!");
+        capacity = length;
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    /**
+     * Make sure the mapping covers the log up to an end, otherwise map it again with twice the capacity.
+     */
+    private void ensureCapacity(long end) throws IOException {
+        if (end > capacity)
+            data = map(Math.min(Math.max(end, capacity * 2), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Overwrite a part of the log with zeros.
+     */
+    private void clear(long from, long to) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(to - from, MIN_CAPACITY));
+        while (from < to) {
+            zeros.clear().limit((int) Math.min(to - from, zeros.capacity()));
+            writeFully(channel, zeros, from);
+            from += zeros.limit();
+        }
+    }
+
+    private void writeIndexRecord(int id, long userID, long moderatorID, @Nonnull Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_RECORD_SIZE)
+                .putInt(id)
+                .putLong(userID)
+                .putLong(moderatorID)
+                .putLong(entry.offset)
+                .putInt(entry.length);
+        buffer.flip();
+        writeFully(indexChannel, buffer, indexSize);
+        indexSize += INDEX_RECORD_SIZE;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file!");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private void index(int id, long userID, @Nonnull Entry entry) {
+        entries.add(entry);
+        idIndex.put(id, entry);
+        userIndex.computeIfAbsent(userID, k -> new ArrayList<>()).add(entry);
+    }
+
+    private void unindex(@Nonnull Punishment p) {
+        entries.remove(entries.size() - 1);
+        idIndex.remove(p.id);
+        removeLastEntry(userIndex, p.userID);
+    }
+
+    private static void removeLastEntry(HashMap<Long, List<Entry>> index, long key) {
+        List<Entry> entries = index.get(key);
+        if (entries == null)
+            return;
+        entries.remove(entries.size() - 1);
+        if (entries.isEmpty())
+            index.remove(key);
+    }
+
+    /**
+     * Append a punishment to the end of the log and index it.
+     *
+     * @param punishment The punishment to append.
+     * @throws IOException If an IO error occurred while writing. The log is left unchanged in that case.
+     */
+    void append(@Nonnull Punishment punishment) throws IOException {
+        byte[] bytes = codec.encode(punishment);
+        Entry entry = new Entry(size, bytes.length - codec.separatorLength());
+        long oldIndexSize = indexSize;
+        try {
+            ensureCapacity(size + bytes.length);
+            // The first byte is written last, so an interrupted append leaves a zero where the entry starts
+            // and the rest of it isn't mistaken for an entry followed by padding.
+            writeFully(channel, ByteBuffer.wrap(bytes, 1, bytes.length - 1), size + 1);
+            writeFully(channel, ByteBuffer.wrap(bytes, 0, 1), size);
+            writeIndexRecord(punishment.id, punishment.userID, punishment.moderatorID, entry);
+        } catch (IOException e) {
+            try {
+                clear(size, size + bytes.length);
+            } catch (IOException ignored) {
+                // An incomplete entry gets cleared on the next load.
+            }
+            indexChannel.truncate(oldIndexSize);
+            indexSize = oldIndexSize;
+            throw e;
+        }
+        index(punishment.id, punishment.userID, entry);
+        size += bytes.length;
+    }
+
+    /**
+     * Remove the last appended punishment from the log again. This is used if a later step of saving a punishment fails.
+     *
+     * @param punishment The punishment that was last appended.
+     * @throws IOException If an IO error occurred while clearing the entry.
+     */
+    void removeLast(@Nonnull Punishment punishment) throws IOException {
+        Entry entry = idIndex.get(punishment.id);
+        if (entry == null || entry.offset + entry.length + codec.separatorLength() != size)
+            return;
+        indexChannel.truncate(indexSize - INDEX_RECORD_SIZE);
+        indexSize -= INDEX_RECORD_SIZE;
+        clear(entry.offset, size);
+        size = entry.offset;
+        unindex(punishment);
+    }
+
+    /**
+     * Check whether there are any punishments logged for a user.
+     *
+     * @param userID The {@link net.dv8tion.jda.api.entities.User user's} ID.
+     */
+    boolean hasUser(long userID) {
+        return userIndex.containsKey(userID);
+    }
+
+    /**
+     * Get a punishment by its ID.
+     *
+     * @param punishmentID The punishment ID.
+     * @return The punishment or null if there is none with that ID.
+     */
+    @Nullable
+    Punishment getPunishment(int punishmentID) {
+        Entry entry = idIndex.get(punishmentID);
+        if (entry == null)
+            return null;
+        return read(entry, new PunishmentRecord());
+    }
+
+    /**
+     * Get the amount of punishments in this log.
+     */
+    int count() {
+        return entries.size();
+    }
+
+    /**
+     * Get all punishments of a user sorted from oldest to newest.
+     */
+    Punishment[] getUserPunishments(long userID) {
+        return read(userIndex.get(userID));
+    }
+
+    /**
+     * Go through all punishments that were appended after the first ones from oldest to newest.
+     * The same {@link PunishmentRecord record} gets reused for every punishment.
+     *
+     * @param from     The amount of punishments to skip.
+     * @param consumer The consumer for the records.
+     */
+    void forEach(int from, @Nonnull PunishmentRecord.RecordConsumer consumer) {
+        if (from < entries.size())
+            forEach(entries.subList(from, entries.size()), consumer);
+    }
+
+    /**
+     * Go through all punishments of a user from oldest to newest.
+     * The same {@link PunishmentRecord record} gets reused for every punishment.
+     *
+     * @param userID   The {@link net.dv8tion.jda.api.entities.User user's} ID.
+     * @param consumer The consumer for the records.
+     */
+    void forEachOfUser(long userID, @Nonnull PunishmentRecord.RecordConsumer consumer) {
+        List<Entry> userEntries = userIndex.get(userID);
+        if (userEntries != null)
+            forEach(userEntries, consumer);
+    }
+
+    private void forEach(@Nonnull List<Entry> entries, @Nonnull PunishmentRecord.RecordConsumer consumer) {
+        PunishmentRecord record = new PunishmentRecord();
+        for (Entry entry : entries) {
+            if (codec.decode(data, (int) entry.offset, entry.length, record))
+                consumer.accept(record);
+        }
+    }
+
+    private Punishment[] read(@Nullable List<Entry> entries) {
+        if (entries == null || entries.isEmpty())
+            return new Punishment[]{};
+
+        List<Punishment> punishments = new ArrayList<>(entries.size());
+        PunishmentRecord record = new PunishmentRecord();
+        for (Entry entry : entries) {
+            Punishment p = read(entry, record);
+            if (p != null)
+                punishments.add(p);
+        }
+        return punishments.toArray(new Punishment[0]);
+    }
+
+    @Nullable
+    private Punishment read(@Nonnull Entry entry, @Nonnull PunishmentRecord record) {
+        if (!codec.decode(data, (int) entry.offset, entry.length, record))
+            return null;
+        return record.toPunishment();
+    }
+
+    /**
+     * The position of a punishment in the log file.
+     */
+    private static class Entry {
+        final long offset;
+        final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
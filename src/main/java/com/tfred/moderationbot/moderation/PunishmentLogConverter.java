@@ -0,0 +1,85 @@
+package com.tfred.moderationbot.moderation;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts the punishment logs of all guilds between the {@link PunishmentCodec text and binary format}.
+ * The index of a converted log gets deleted and rebuilt the next time the bot loads the log.
+ * This must not be run while the bot is running.
+ * <p>
+ * Usage: {@code java -cp ModerationBot.jar com.tfred.moderationbot.moderation.PunishmentLogConverter <text|binary>}
+ */
+public class PunishmentLogConverter {
+    private PunishmentLogConverter() {
+    }
+
+    public static void main(String[] args) {
+        PunishmentCodec target = args.length == 1 ? PunishmentCodec.forName(args[0]) : null;
+        if (target == null) {
+            System.out.println("Usage: PunishmentLogConverter <text|binary>");
+            return;
+        }
+
+        List<Path> dirs;
+        try (Stream<Path> files = Files.find(Paths.get("moderations"), 1, (p, bfa) -> bfa.isDirectory() && p.getFileName().toString().matches("\\d+"))) {
+            dirs = files.collect(Collectors.toList());
+        } catch (IOException e) {
+            System.out.println("Failed to list the guild directories! " + e.getMessage());
+            return;
+        }
+
+        PunishmentCodec source = target == PunishmentCodec.TEXT ? PunishmentCodec.BINARY : PunishmentCodec.TEXT;
+        for (Path dir : dirs) {
+            if (!Files.exists(dir.resolve(source.fileName())))
+                continue;
+            try {
+                int count = convert(dir, source, target);
+                System.out.println("Converted " + count + " punishments of guild " + dir.getFileName() + ".");
+            } catch (IOException e) {
+                System.out.println("Failed to convert the punishment log of guild " + dir.getFileName() + "! " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write all valid entries of a log into a new log in the target format and delete the old log and its index.
+     *
+     * @return The amount of converted punishments.
+     */
+    private static int convert(Path dir, PunishmentCodec source, PunishmentCodec target) throws IOException {
+        Path sourcePath = dir.resolve(source.fileName());
+        Path targetPath = dir.resolve(target.fileName());
+        Path temp = Paths.get(targetPath + ".tmp");
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(sourcePath));
+        PunishmentRecord record = new PunishmentRecord();
+
+        int count = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            int pos = 0;
+            int length;
+            while ((length = source.entryLength(data, pos, data.capacity())) != -1) {
+                if (source.decode(data, pos, length, record)) {
+                    out.write(target.encode(record.toPunishment()));
+                    count++;
+                } else if (length > 0)
+                    System.out.println("Skipped invalid entry at offset " + pos + " in the punishment log of guild " + dir.getFileName() + ".");
+                pos += length + source.separatorLength();
+            }
+        }
+
+        Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(dir.resolve("punishments.idx"));
+        Files.delete(sourcePath);
+        return count;
+    }
+}
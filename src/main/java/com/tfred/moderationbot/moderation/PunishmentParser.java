@@ -0,0 +1,222 @@
+package com.tfred.moderationbot.moderation;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * A single pass parser for the m, b, c, n and x punishment formats which doesn't use regular expressions.
+ * <p>
+ * This only handles well formed lines like the ones written by {@link Punishment#toString()}. If a line deviates from that
+ * in any way (invalid characters, numbers out of range, line terminators in the reason...) null is returned and
+ * the caller has to fall back to the regex based parse methods of the punishment classes. That way every line gets parsed
+ * exactly like those methods would parse it.
+ * <p>
+ * Lines can also be parsed directly from the UTF-8 encoded bytes of the punishment log into a {@link PunishmentRecord}
+ * without creating a string. The reason is then only decoded if it gets used.
+ */
+class PunishmentParser {
+    private final String string;
+    private final ByteBuffer data;
+    private final int end;
+    private int pos;
+
+    private PunishmentParser(String string, ByteBuffer data, int pos, int end) {
+        this.string = string;
+        this.data = data;
+        this.pos = pos;
+        this.end = end;
+    }
+
+    /**
+     * Parse a string for a punishment.
+     *
+     * @param string The string to parse. For the formats check the individual punishment classes.
+     * @return The punishment or null if the string isn't a well formed m, b, c, n or x punishment.
+     */
+    @Nullable
+    static Punishment parse(String string) {
+        PunishmentRecord record = new PunishmentRecord();
+        if (!new PunishmentParser(string, null, 0, string.length()).parse(record))
+            return null;
+        return record.toPunishment();
+    }
+
+    /**
+     * Parse a userID and a string for a punishment.
+     *
+     * @param userID The user ID for the punishment.
+     * @param string The string to parse. For the formats check the individual punishment classes.
+     * @return The punishment or null if the string isn't a well formed m, b, c, n or x punishment.
+     */
+    @Nullable
+    static Punishment parse(long userID, String string) {
+        if (string.length() < 2 || string.charAt(1) != ' ')
+            return null;
+        PunishmentRecord record = new PunishmentRecord();
+        record.userID = userID;
+        if (!new PunishmentParser(string, null, 2, string.length()).parseRest(string.charAt(0), false, record))
+            return null;
+        return record.toPunishment();
+    }
+
+    /**
+     * Parse a UTF-8 encoded line for a punishment.
+     *
+     * @param data   The data.
+     * @param pos    The start of the line.
+     * @param length The length of the line without the line break.
+     * @param record The record to fill.
+     * @return False if the line isn't a well formed m, b, c, n or x punishment. The record may have been changed anyway.
+     */
+    static boolean parse(@Nonnull ByteBuffer data, int pos, int length, @Nonnull PunishmentRecord record) {
+        return new PunishmentParser(null, data, pos, pos + length).parse(record);
+    }
+
+    private boolean parse(PunishmentRecord record) {
+        if (end - pos < 2 || charAt(pos + 1) != ' ')
+            return false;
+        char type = charAt(pos);
+        pos += 2;
+        long userID = nextNumber();
+        if (userID == -1)
+            return false;
+        record.userID = userID;
+        return parseRest(type, true, record);
+    }
+
+    private boolean parseRest(char type, boolean withUserID, PunishmentRecord record) {
+        long id = nextNumber();
+        long date = nextNumber();
+        long moderatorID = nextNumber();
+        if (id == -1 || date == -1 || moderatorID == -1 || id > Integer.MAX_VALUE)
+            return false;
+        record.type = type;
+        record.id = (int) id;
+        record.date = date;
+        record.moderatorID = moderatorID;
+        record.severity = 0;
+        record.channelID = 0;
+        record.duration = 0;
+        record.hide = false;
+        record.pardonedPunishmentID = 0;
+        record.pardonedPunishmentType = 0;
+
+        switch (type) {
+            case 'm':
+            case 'b': {
+                long severity = nextNumber();
+                long duration = nextNumber();
+                if (severity == -1 || severity > Short.MAX_VALUE || duration == -1 || duration > Integer.MAX_VALUE)
+                    return false;
+                record.severity = (short) severity;
+                record.duration = (int) duration;
+                return reason(record);
+            }
+            case 'c': {
+                long channelID = nextNumber();
+                long duration = nextNumber();
+                if (channelID == -1 || duration == -1 || duration > Integer.MAX_VALUE)
+                    return false;
+                record.channelID = channelID;
+                record.duration = (int) duration;
+                return reason(record);
+            }
+            case 'n': {
+                long duration = nextNumber();
+                if (duration == -1 || duration > Integer.MAX_VALUE)
+                    return false;
+                record.duration = (int) duration;
+                return reason(record);
+            }
+            case 'x': {
+                int hideStart = pos;
+                long hide = nextNumber();
+                // The format with user ID only allows a single digit here.
+                if (hide == -1 || (withUserID && pos - hideStart != 2))
+                    return false;
+                record.hide = pos - hideStart == 2 && charAt(hideStart) == '1';
+                long pardonedID = nextNumber();
+                if (pardonedID == -1 || pardonedID > Integer.MAX_VALUE || pos + 1 >= end || charAt(pos + 1) != ' ')
+                    return false;
+                char pardonedType = charAt(pos);
+                // A multi byte character can't be read from the bytes directly.
+                if (isLineTerminator(pardonedType) || (data != null && pardonedType >= 0x80))
+                    return false;
+                record.pardonedPunishmentID = (int) pardonedID;
+                record.pardonedPunishmentType = pardonedType;
+                pos += 2;
+                return reason(record);
+            }
+            default:
+                return false;
+        }
+    }
+
+    private char charAt(int i) {
+        return data == null ? string.charAt(i) : (char) (data.get(i) & 0xFF);
+    }
+
+    /**
+     * Read a number followed by a space.
+     *
+     * @return The number or -1 if there is no number or it doesn't fit into a long.
+     */
+    private long nextNumber() {
+        int start = pos;
+        long value = 0;
+        while (pos < end) {
+            char c = charAt(pos);
+            if (c == ' ') {
+                if (pos == start)
+                    return -1;
+                pos++;
+                return value;
+            }
+            if (c < '0' || c > '9')
+                return -1;
+            // Snowflakes have 19 digits, so only an overflow of the long can be rejected here.
+            if (value > (Long.MAX_VALUE - (c - '0')) / 10)
+                return -1;
+            value = value * 10 + (c - '0');
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Set the rest of the line as the escaped reason of the record.
+     *
+     * @return False if the reason contains a line terminator.
+     */
+    private boolean reason(PunishmentRecord record) {
+        if (data == null) {
+            for (int i = pos; i < end; i++) {
+                if (isLineTerminator(string.charAt(i)))
+                    return false;
+            }
+            record.setReason(string.substring(pos), true);
+            return true;
+        }
+
+        for (int i = pos; i < end; i++) {
+            int b = data.get(i) & 0xFF;
+            if (b == '\n' || b == '\r')
+                return false;
+            // U+0085 is C2 85 and U+2028 and U+2029 are E2 80 A8 and E2 80 A9 in UTF-8.
+            if (b == 0xC2 && i + 1 < end && (data.get(i + 1) & 0xFF) == 0x85)
+                return false;
+            if (b == 0xE2 && i + 2 < end && (data.get(i + 1) & 0xFF) == 0x80) {
+                int c = data.get(i + 2) & 0xFF;
+                if (c == 0xA8 || c == 0xA9)
+                    return false;
+            }
+        }
+        record.setReason(data, pos, end - pos, true);
+        return true;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,182 @@
+package com.tfred.moderationbot.moderation;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable view of one punishment in the {@link PunishmentLog punishment log}.
+ * Scanning the log with {@link PunishmentLog#forEach(int, RecordConsumer)} fills the same record again for every entry,
+ * so commands which only need the IDs, dates and types of punishments don't create any objects per entry.
+ * The reason is only decoded (and unescaped for the text format) if {@link #reason()} gets called.
+ * <p>
+ * Only the fields which belong to the {@link #type} of the punishment are set. The record is only valid until the consumer returns.
+ */
+class PunishmentRecord {
+    /**
+     * The first character of the {@link Punishment#toString() string representation}: m, b, c, n or x.
+     */
+    char type;
+    long userID;
+    int id;
+    long date;
+    long moderatorID;
+    /**
+     * The severity of mutes and bans.
+     */
+    short severity;
+    /**
+     * The channel ID of channel bans.
+     */
+    long channelID;
+    /**
+     * The duration of timed punishments in minutes.
+     */
+    int duration;
+    boolean hide;
+    int pardonedPunishmentID;
+    char pardonedPunishmentType;
+
+    private ByteBuffer reasonData;
+    private int reasonOffset;
+    private int reasonLength;
+    private String rawReason;
+    private boolean reasonEscaped;
+    private String reason;
+    private Punishment punishment;
+
+    /**
+     * A consumer for the records of a punishment log.
+     */
+    interface RecordConsumer {
+        void accept(@Nonnull PunishmentRecord record);
+    }
+
+    /**
+     * Set this record to the values of a punishment.
+     */
+    void set(@Nonnull Punishment p) {
+        userID = p.userID;
+        id = p.id;
+        date = p.date;
+        moderatorID = p.moderatorID;
+        severity = 0;
+        channelID = 0;
+        duration = 0;
+        hide = false;
+        pardonedPunishmentID = 0;
+        pardonedPunishmentType = 0;
+        if (p instanceof TimedPunishment)
+            duration = ((TimedPunishment) p).duration;
+
+        if (p instanceof MutePunishment) {
+            type = 'm';
+            severity = ((MutePunishment) p).severity;
+        } else if (p instanceof BanPunishment) {
+            type = 'b';
+            severity = ((BanPunishment) p).severity;
+        } else if (p instanceof ChannelBanPunishment) {
+            type = 'c';
+            channelID = ((ChannelBanPunishment) p).channelID;
+        } else if (p instanceof NamePunishment)
+            type = 'n';
+        else {
+            PardonPunishment pardon = (PardonPunishment) p;
+            type = 'x';
+            hide = pardon.hide;
+            pardonedPunishmentID = pardon.pardonedPunishmentID;
+            pardonedPunishmentType = pardon.pardonedPunishmentType;
+        }
+
+        reasonData = null;
+        rawReason = null;
+        reason = p.reason;
+        punishment = p;
+    }
+
+    /**
+     * Set the UTF-8 encoded reason of this record without decoding it.
+     * All other fields have to be set before.
+     *
+     * @param escaped Whether the reason is {@link StringEscapeUtils#escapeJava(String) escaped}.
+     */
+    void setReason(@Nonnull ByteBuffer data, int offset, int length, boolean escaped) {
+        reasonData = data;
+        reasonOffset = offset;
+        reasonLength = length;
+        rawReason = null;
+        reasonEscaped = escaped;
+        reason = null;
+        punishment = null;
+    }
+
+    /**
+     * Set the reason of this record without unescaping it.
+     * All other fields have to be set before.
+     *
+     * @param escaped Whether the reason is {@link StringEscapeUtils#escapeJava(String) escaped}.
+     */
+    void setReason(@Nonnull String reason, boolean escaped) {
+        reasonData = null;
+        rawReason = reason;
+        reasonEscaped = escaped;
+        this.reason = null;
+        punishment = null;
+    }
+
+    /**
+     * @return The reason of this punishment.
+     */
+    @Nonnull
+    String reason() {
+        if (reason == null) {
+            String raw = rawReason;
+            if (raw == null) {
+                byte[] bytes = new byte[reasonLength];
+                ByteBuffer buffer = reasonData.duplicate();
+                buffer.position(reasonOffset);
+                buffer.get(bytes);
+                raw = new String(bytes, StandardCharsets.UTF_8);
+            }
+            // Unescaping only changes anything if there is a backslash.
+            reason = reasonEscaped && raw.indexOf('\\') != -1 ? StringEscapeUtils.unescapeJava(raw) : raw;
+            reasonData = null;
+            rawReason = null;
+        }
+        return reason;
+    }
+
+    /**
+     * Create the punishment this record represents.
+     *
+     * @return The punishment or null if the record has an unknown type.
+     */
+    @Nullable
+    Punishment toPunishment() {
+        if (punishment == null) {
+            switch (type) {
+                case 'm':
+                    punishment = new MutePunishment(userID, id, date, moderatorID, severity, duration, reason());
+                    break;
+                case 'b':
+                    punishment = new BanPunishment(userID, id, date, moderatorID, severity, duration, reason());
+                    break;
+                case 'c':
+                    punishment = new ChannelBanPunishment(userID, id, date, moderatorID, channelID, duration, reason());
+                    break;
+                case 'n':
+                    punishment = new NamePunishment(userID, id, date, moderatorID, duration, reason());
+                    break;
+                case 'x':
+                    punishment = new PardonPunishment(userID, id, date, moderatorID, hide, pardonedPunishmentID, pardonedPunishmentType, reason());
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return punishment;
+    }
+}
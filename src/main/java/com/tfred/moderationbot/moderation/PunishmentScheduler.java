@@ -40,7 +40,7 @@ public class PunishmentScheduler {
     }
 
     /**
-     * Initialize the punishment scheduler. This also loads all active punishments for each guild.
+     * Initialize the punishment scheduler. This also loads the punishment log and all active punishments for each guild.
      */
     public static synchronized void initialize(@Nonnull JDA jda, @Nonnull BotScheduler scheduler) {
         if (punishmentScheduler == null) {
@@ -53,6 +53,11 @@ public class PunishmentScheduler {
                         .collect(Collectors.toList());
 
                 for (long id : ids) {
+                    try {
+                        ModerationData.loadPunishmentLog(id);
+                    } catch (IOException e) {
+                        System.out.println("Failed to load the punishment log for guild with ID " + id + "! " + e.getMessage());
+                    }
                     try {
                         TimedPunishment[] bla = ModerationData.getActivePunishments(id);
                         for (TimedPunishment p : bla) {
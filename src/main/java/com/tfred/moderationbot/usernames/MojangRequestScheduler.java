@@ -0,0 +1,183 @@
+package com.tfred.moderationbot.usernames;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out permits for requests to the Mojang API so the bot never sends more than {@link #LIMIT} requests per window.
+ * The limit is per IP, so all guilds share one scheduler.
+ * <p>
+ * This works like a token bucket where every token gets refilled exactly one window after it was used. Requests wait for a
+ * free token instead of failing, which keeps the limit fully used without ever exceeding it in any window.
+ * Interactive requests (commands, joins, name changes) always go first and only wait up to {@link #MAX_INTERACTIVE_WAIT}
+ * milliseconds before a {@link RateLimitException} gets thrown. Bulk requests (updating all names of a guild) only get a token
+ * while no interactive request is waiting and they wait as long as necessary.
+ * <p>
+ * Bulk requests can never use the last {@link #RESERVE} free tokens, so a bulk update that sends a request for every token it
+ * can get still leaves enough for interactive requests until its own tokens come back.
+ */
+public class MojangRequestScheduler {
+    private static final int LIMIT = 600;
+    private static final long WINDOW = 601000L;
+    private static final long MAX_INTERACTIVE_WAIT = 10000L;
+    private static final int RESERVE = 100;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition changed = lock.newCondition();
+    // The times the last LIMIT tokens were used, oldest at index next.
+    private static final long[] usedTimes = new long[LIMIT];
+    private static int next = 0;
+    private static int waitingInteractive = 0;
+
+    private static final LongAdder interactiveCount = new LongAdder();
+    private static final LongAdder bulkCount = new LongAdder();
+    private static final LongAdder interactiveWait = new LongAdder();
+    private static final LongAdder bulkWait = new LongAdder();
+    private static final AtomicLong maxInteractiveWait = new AtomicLong(0);
+    private static final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Wait for a token for an interactive request.
+     *
+     * @throws RateLimitException If no token became available in time.
+     */
+    static void acquireInteractive() throws RateLimitException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + MAX_INTERACTIVE_WAIT;
+        lock.lock();
+        try {
+            waitingInteractive++;
+            try {
+                while (true) {
+                    long now = System.currentTimeMillis();
+                    long available = usedTimes[next] + WINDOW;
+                    if (available <= now) {
+                        use(now);
+                        break;
+                    }
+                    if (available > deadline) {
+                        rejectedCount.increment();
+                        throw new RateLimitException((int) ((available - now + 999) / 1000));
+                    }
+                    try {
+                        changed.await(available - now, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejectedCount.increment();
+                        throw new RateLimitException((int) ((available - now + 999) / 1000));
+                    }
+                }
+            } finally {
+                if (--waitingInteractive == 0)
+                    changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long wait = System.nanoTime() - start;
+        interactiveCount.increment();
+        interactiveWait.add(wait);
+        maxInteractiveWait.accumulateAndGet(wait, Math::max);
+    }
+
+    /**
+     * Wait for a token for a bulk request. This waits until no interactive request is waiting anymore and more than
+     * {@link #RESERVE} tokens are free.
+     *
+     * @throws InterruptedException If the thread got interrupted while waiting.
+     */
+    static void acquireBulk() throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                // The tokens are ordered from oldest to newest, so this is when more than RESERVE of them are free.
+                long available = usedTimes[(next + RESERVE) % LIMIT] + WINDOW;
+                if (waitingInteractive != 0)
+                    changed.await();
+                else if (available <= now) {
+                    use(now);
+                    break;
+                } else
+                    changed.await(available - now, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        bulkCount.increment();
+        bulkWait.add(System.nanoTime() - start);
+    }
+
+    private static void use(long now) {
+        usedTimes[next] = now;
+        next = (next + 1) % LIMIT;
+    }
+
+    /**
+     * @return The amount of tokens that can be used right now.
+     */
+    public static int getAvailableTokens() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            int available = 0;
+            for (long usedTime : usedTimes) {
+                if (usedTime + WINDOW <= now)
+                    available++;
+            }
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The amount of interactive requests that got a token.
+     */
+    public static long getInteractiveCount() {
+        return interactiveCount.sum();
+    }
+
+    /**
+     * @return The amount of bulk requests that got a token.
+     */
+    public static long getBulkCount() {
+        return bulkCount.sum();
+    }
+
+    /**
+     * @return The amount of interactive requests that didn't get a token in time.
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * @return The average time interactive requests waited for a token in milliseconds.
+     */
+    public static double getAverageInteractiveWaitMillis() {
+        long count = interactiveCount.sum();
+        return count == 0 ? 0 : interactiveWait.sum() / 1000000. / count;
+    }
+
+    /**
+     * @return The longest time an interactive request waited for a token in milliseconds.
+     */
+    public static double getMaxInteractiveWaitMillis() {
+        return maxInteractiveWait.get() / 1000000.;
+    }
+
+    /**
+     * @return The average time bulk requests waited for a token in milliseconds.
+     */
+    public static double getAverageBulkWaitMillis() {
+        long count = bulkCount.sum();
+        return count == 0 ? 0 : bulkWait.sum() / 1000000. / count;
+    }
+}
@@ -0,0 +1,279 @@
+package com.tfred.moderationbot.usernames;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The minecraft names of uuids, shared by all guilds and stored in userdata/names.cache so they survive restarts.
+ * <p>
+ * Names are fresh for NAME_CACHE_TTL_MINUTES minutes (environment variable, 10 by default). After that they still get
+ * returned for up to {@link #MAX_STALE} milliseconds while they are fetched again in the background with the bulk priority of
+ * the {@link MojangRequestScheduler request scheduler}. Only names that are older than that or not cached at all get fetched
+ * while the caller waits. If multiple threads need the same name at once only one of them sends the request and the others
+ * wait for its result.
+ * <p>
+ * Failed requests aren't cached. Changes get written to disk at most every {@link #FLUSH_DELAY} seconds and when the bot shuts down,
+ * names older than {@link #MAX_STALE} get removed when that happens.
+ */
+public class NameCache {
+    private static final long TTL = configuredTTL();
+    private static final long MAX_STALE = 86400000L;
+    /**
+     * Bulk updates reuse names that were fetched in this time, so updating all guilds one after another
+     * only sends one request per uuid.
+     */
+    static final long BULK_MAX_AGE = Math.max(TTL, 3600000L);
+    private static final long FLUSH_DELAY = 60;
+    private static final Path PATH = Paths.get("userdata/names.cache");
+
+    private static final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentHashMap<String, CompletableFuture<String[]>> fetching = new ConcurrentHashMap<>();
+    private static final AtomicBoolean dirty = new AtomicBoolean(false);
+    private static final AtomicBoolean loaded = new AtomicBoolean(false);
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder staleCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "NameCache flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Refreshes can wait a long time for a token, so they get their own thread.
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "NameCache refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(NameCache::flush));
+    }
+
+    private static long configuredTTL() {
+        String ttl = System.getenv("NAME_CACHE_TTL_MINUTES");
+        if (ttl != null) {
+            try {
+                return Long.parseLong(ttl) * 60000L;
+            } catch (NumberFormatException e) {
+                System.out.println("[NameCache] ERROR - Invalid NAME_CACHE_TTL_MINUTES: " + ttl);
+            }
+        }
+        return 600000L;
+    }
+
+    /**
+     * Load the cached names from disk. Names that are too old to be returned anymore are skipped.
+     * This only reads the file once, later calls do nothing.
+     */
+    public static void load() {
+        if (!loaded.compareAndSet(false, true) || !Files.exists(PATH))
+            return;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(PATH);
+        } catch (IOException e) {
+            System.out.println("[NameCache] ERROR - IO error when reading the name cache! " + e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String line : lines) {
+            String[] data = line.split(" ");
+            try {
+                long fetched = Long.parseLong(data[1]);
+                if (data.length < 3 || data.length > 4 || now - fetched >= MAX_STALE)
+                    continue;
+                // Names that were fetched while the file was loading are newer.
+                entries.putIfAbsent(data[0], new Entry(Arrays.copyOfRange(data, 2, data.length), fetched));
+            } catch (IndexOutOfBoundsException | NumberFormatException ignored) {
+                System.out.println("[NameCache] ERROR - Formatting error in the name cache: " + line);
+            }
+        }
+    }
+
+    /**
+     * Write all cached names to disk if anything changed since the last write.
+     */
+    public static void flush() {
+        // The flusher, the shutdown hook and the bot's shutdown could write at the same time, the later snapshot has to be written last.
+        synchronized (PATH) {
+            long oldest = System.currentTimeMillis() - MAX_STALE;
+            boolean evicted = entries.values().removeIf(e -> e.fetched <= oldest);
+            if (!dirty.getAndSet(false) && !evicted)
+                return;
+
+            List<String> lines = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                Entry e = entry.getValue();
+                lines.add(entry.getKey() + ' ' + e.fetched + ' ' + String.join(" ", e.names));
+            }
+            try {
+                Files.createDirectories(PATH.getParent());
+                Path temp = Paths.get(PATH + ".tmp");
+                Files.write(temp, lines);
+                Files.move(temp, PATH, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.out.println("[NameCache] ERROR - IO error when writing the name cache! " + e.getMessage());
+                markDirty();
+            }
+        }
+    }
+
+    /**
+     * @return The amount of cached uuids.
+     */
+    public static int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The amount of lookups that returned a fresh name.
+     */
+    public static long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return The amount of lookups that returned a stale name and fetched it again in the background.
+     */
+    public static long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    /**
+     * @return The amount of lookups that had to wait for a request.
+     */
+    public static long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Get the latest minecraft name of a uuid and the previous name if one exists.
+     *
+     * @param uuid The uuid.
+     * @return The name(s) like {@link UsernameData#getName(String)} returns them.
+     * @throws RateLimitException If the name had to be fetched and the {@link MojangRequestScheduler request scheduler} couldn't send the request in time.
+     */
+    @Nonnull
+    static String[] get(@Nonnull String uuid) throws RateLimitException {
+        load();
+        Entry entry = entries.get(uuid);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.fetched;
+            if (age < TTL) {
+                hitCount.increment();
+                return entry.names;
+            }
+            if (age < MAX_STALE) {
+                staleCount.increment();
+                refresh(uuid);
+                return entry.names;
+            }
+        }
+
+        missCount.increment();
+        CompletableFuture<String[]> fetch = new CompletableFuture<>();
+        CompletableFuture<String[]> running = fetching.putIfAbsent(uuid, fetch);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RateLimitException)
+                    throw (RateLimitException) e.getCause();
+                throw e;
+            }
+        }
+
+        try {
+            String[] names = UsernameData.getName(uuid);
+            put(uuid, names);
+            fetch.complete(names);
+            return names;
+        } catch (RateLimitException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            // A successful fetch is cached by now, so later calls don't fetch it again.
+            fetching.remove(uuid, fetch);
+        }
+    }
+
+    /**
+     * Get the cached name(s) of a uuid if they were fetched recently.
+     *
+     * @param uuid   The uuid.
+     * @param maxAge The maximum age in milliseconds.
+     * @return The name(s) or null if they aren't cached or older than maxAge.
+     */
+    @Nullable
+    static String[] getIfFresh(@Nonnull String uuid, long maxAge) {
+        load();
+        Entry entry = entries.get(uuid);
+        if (entry == null || System.currentTimeMillis() - entry.fetched >= maxAge)
+            return null;
+        hitCount.increment();
+        return entry.names;
+    }
+
+    /**
+     * Cache the name(s) of a uuid. Results of failed requests ({"e"}) are ignored.
+     *
+     * @param uuid  The uuid.
+     * @param names The name(s) like {@link UsernameData#getName(String)} returns them.
+     */
+    static void put(@Nonnull String uuid, @Nonnull String[] names) {
+        if (names.length == 0 || (names.length == 1 && names[0].equals("e")))
+            return;
+        entries.put(uuid, new Entry(names, System.currentTimeMillis()));
+        markDirty();
+    }
+
+    private static void refresh(String uuid) {
+        if (!refreshing.add(uuid))
+            return;
+        refresher.execute(() -> {
+            try {
+                MojangRequestScheduler.acquireBulk();
+                put(uuid, UsernameData.requestName(uuid));
+            } catch (InterruptedException ignored) {
+            } finally {
+                refreshing.remove(uuid);
+            }
+        });
+    }
+
+    private static void markDirty() {
+        if (dirty.compareAndSet(false, true))
+            flusher.schedule(NameCache::flush, FLUSH_DELAY, TimeUnit.SECONDS);
+    }
+
+    private static class Entry {
+        final String[] names;
+        final long fetched;
+
+        Entry(String[] names, long fetched) {
+            this.names = names;
+            this.fetched = fetched;
+        }
+    }
+}
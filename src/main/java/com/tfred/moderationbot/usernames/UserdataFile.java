@@ -0,0 +1,173 @@
+package com.tfred.moderationbot.usernames;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The saved uuids of a guild on disk.
+ * <p>
+ * userdata/guildID.userdata is a snapshot with one "userID uuid" line per user. All changes since the snapshot are
+ * appended to userdata/guildID.userdata.journal, "+ userID uuid" for a new or changed uuid and "- userID" for a removed one,
+ * so every change is a single append which is forced to disk before it returns.
+ * <p>
+ * Once the journal has more records than half the amount of users (and at least {@link #COMPACT_MIN}) it should get
+ * {@link #compact(UuidIndex) compacted}: the new snapshot is written to a temporary file, forced to disk and moved over the old
+ * one, then the journal gets deleted. If the bot crashes in between, the journal gets replayed on top of the new snapshot again
+ * which doesn't change anything, since every record just sets the final state of one user.
+ * A journal that ends with an incomplete record (a crash while appending) gets compacted right after loading,
+ * so no later record can get appended to the incomplete one. The directory gets synced after the snapshot was moved,
+ * so the journal can't be deleted on disk before the new snapshot is there.
+ * <p>
+ * If the snapshot or the journal can't be read, loading fails instead of returning the part that could be read,
+ * since compacting a partial index would overwrite the saved links for good.
+ * <p>
+ * This class isn't thread safe, synchronization is handled by {@link UsernameData}.
+ */
+class UserdataFile {
+    private static final int COMPACT_MIN = 100;
+
+    private final long guildID;
+    private final Path snapshot;
+    private final Path journal;
+    private int journalRecords = 0;
+
+    UserdataFile(long guildID) {
+        this.guildID = guildID;
+        snapshot = Paths.get("userdata/" + guildID + ".userdata");
+        journal = Paths.get("userdata/" + guildID + ".userdata.journal");
+    }
+
+    /**
+     * Read the snapshot and replay the journal. The snapshot gets created if it doesn't exist.
+     *
+     * @return The uuid index.
+     * @throws IOException If the snapshot or the journal couldn't be read.
+     */
+    @Nonnull
+    UuidIndex load() throws IOException {
+        journalRecords = 0;
+        List<String> lines = Collections.emptyList();
+        if (Files.exists(snapshot))
+            lines = Files.readAllLines(snapshot);
+        else {
+            try {
+                Files.createDirectories(snapshot.getParent());
+                Files.createFile(snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        UuidIndex index = new UuidIndex(lines.size());
+        for (String line : lines) {
+            String[] data = line.split(" ");
+            try {
+                if (!index.put(Long.parseLong(data[0]), data[1]))
+                    System.out.println("Formatting error in file " + guildID + ".userdata!");
+            } catch (IndexOutOfBoundsException | NumberFormatException ignored) {
+                System.out.println("Formatting error in file " + guildID + ".userdata!");
+            }
+        }
+
+        if (Files.exists(journal)) {
+            byte[] bytes = Files.readAllBytes(journal);
+            String[] records = new String(bytes, StandardCharsets.UTF_8).split("\n");
+            // An incomplete last record isn't replayed, a cut off user ID could remove the wrong user.
+            boolean incomplete = bytes.length != 0 && bytes[bytes.length - 1] != '\n';
+            for (int i = 0; i < records.length - (incomplete ? 1 : 0); i++) {
+                if (records[i].isEmpty())
+                    continue;
+                journalRecords++;
+                if (!replay(index, records[i]))
+                    System.out.println("Formatting error in file " + guildID + ".userdata.journal: " + records[i]);
+            }
+
+            if (incomplete) {
+                try {
+                    compact(index);
+                } catch (IOException e) {
+                    System.out.println("IO error when compacting user data! " + e.getMessage());
+                }
+            }
+        }
+        return index;
+    }
+
+    private static boolean replay(UuidIndex index, String record) {
+        String[] data = record.split(" ");
+        try {
+            if (data[0].equals("+") && data.length == 3)
+                return index.put(Long.parseLong(data[1]), data[2]);
+            if (data[0].equals("-") && data.length == 2) {
+                index.remove(Long.parseLong(data[1]));
+                return true;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        return false;
+    }
+
+    /**
+     * Record the new uuid of a user.
+     */
+    void link(long userID, @Nonnull String uuid) throws IOException {
+        append("+ " + userID + ' ' + uuid + '\n');
+    }
+
+    /**
+     * Record that a user's uuid got removed.
+     */
+    void unlink(long userID) throws IOException {
+        append("- " + userID + '\n');
+    }
+
+    private void append(String record) throws IOException {
+        Files.write(journal, record.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        journalRecords++;
+    }
+
+    /**
+     * @param users The amount of users in the index.
+     * @return True, if the journal is long enough to be compacted.
+     */
+    boolean needsCompaction(int users) {
+        return journalRecords > Math.max(COMPACT_MIN, users / 2);
+    }
+
+    /**
+     * Write the index as the new snapshot and delete the journal.
+     *
+     * @param index The index with all changes of the journal applied.
+     */
+    void compact(@Nonnull UuidIndex index) throws IOException {
+        Path temp = Paths.get(snapshot + ".tmp");
+        Files.write(temp, index.toLines());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        Files.deleteIfExists(journal);
+        journalRecords = 0;
+    }
+
+    /**
+     * Force the entries of the userdata directory to disk. This isn't supported on every platform (Windows can't open
+     * directories), the move is still atomic there but might not be durable yet when the journal gets deleted.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(snapshot.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,93 +1,86 @@
 package com.tfred.moderationbot.usernames;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import net.dv8tion.jda.api.entities.ISnowflake;
+import com.tfred.moderationbot.HttpService;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.exceptions.HierarchyException;
 import net.dv8tion.jda.api.exceptions.InsufficientPermissionException;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.concurrent.FutureCallback;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
-import org.apache.http.impl.nio.client.HttpAsyncClients;
-import org.apache.http.util.EntityUtils;
 
 import javax.annotation.Nonnull;
-import java.io.BufferedReader;
+import javax.annotation.Nullable;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.lang.ref.SoftReference;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class UsernameData {
-    private static int requestCount = 0;
-    private static long lastRatelimitReset = 0L;
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER = 30000L;
+    private static final Pattern NAME_PATTERN = Pattern.compile("\"name\":\"(.*?)\"");
+    private static final Pattern UUID_PATTERN = Pattern.compile("\"id\":\"(.*?)\"");
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Userdata compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     final long guildID;
-    private final LoadingCache<Long, String[]> usernameCache;
-    private SoftReference<HashMap<Long, String>> uuidMapReference;
+    private final UserdataFile file;
+    // Loaded on first use and kept for as long as the guild's data is, so it never has to be read again.
+    private volatile UuidIndex index;
+    private boolean compactionScheduled = false;
+    private final Object updateLock = new Object();
 
     UsernameData(long guildID) {
         this.guildID = guildID;
-        usernameCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(10, TimeUnit.MINUTES)
-                .build(
-                        new CacheLoader<Long, String[]>() {
-                            @Override
-                            public String[] load(@Nonnull Long userID) throws RateLimitException {
-                                HashMap<Long, String> uuidMap = uuidMapReference.get();
-                                if (uuidMap == null) {
-                                    loadData();
-                                    uuidMap = uuidMapReference.get();
-                                }
-                                assert uuidMap != null;
-                                String uuid = uuidMap.get(userID);
-                                if (uuid == null)
-                                    return new String[]{};
-                                try {
-                                    return getName(uuid);
-                                } catch (Exception e) {
-                                    if (e instanceof RateLimitException)
-                                        throw e;
-                                    return new String[]{"e"};
-                                }
-                            }
-                        }
-                );
-        uuidMapReference = new SoftReference<>(null);
+        file = new UserdataFile(guildID);
     }
 
     /**
-     * Checks whether a certain amount of requests can be sent and increases the request counter if possible.
-     *
-     * @param extraRequestCount The amount of requests we want to send.
-     * @throws RateLimitException If the extra amount of requests would exceed the request limit.
+     * Get the {@link UuidIndex uuid index} of this guild and load it if necessary.
+     * If loading fails an empty index is returned which isn't kept, so the next call tries to load it again.
+     * Links saved in the meantime only get appended to the journal and the file never gets compacted until a load worked.
      */
-    private static synchronized void increaseRequestCount(int extraRequestCount) throws RateLimitException {
-        if (System.currentTimeMillis() - 601000L > lastRatelimitReset) {
-            requestCount = extraRequestCount;
-            lastRatelimitReset = System.currentTimeMillis();
-            return;
+    @Nonnull
+    private UuidIndex index() {
+        UuidIndex index = this.index;
+        if (index == null) {
+            synchronized (this) {
+                index = this.index;
+                if (index == null) {
+                    try {
+                        index = file.load();
+                        this.index = index;
+                    } catch (IOException e) {
+                        System.out.println("IO error when loading the user data of guild " + guildID + "! " + e.getMessage());
+                        return new UuidIndex(0);
+                    }
+                }
+            }
         }
-        if (requestCount + extraRequestCount > 600)
-            throw new RateLimitException((int) ((lastRatelimitReset + 601000L - System.currentTimeMillis()) / 1000));
+        return index;
+    }
 
-        requestCount += extraRequestCount;
+    /**
+     * Get the latest minecraft name of a user and the previous name if one exists from the {@link NameCache name cache}.
+     *
+     * @param userID The user ID.
+     * @return The name(s) like {@link #getName(String)} returns them or {} if the user has no associated uuid.
+     * @throws RateLimitException If the name had to be fetched and the {@link MojangRequestScheduler request scheduler} couldn't send the request in time.
+     */
+    private String[] names(long userID) throws RateLimitException {
+        String uuid = index().getUuid(userID);
+        if (uuid == null)
+            return new String[]{};
+        return NameCache.get(uuid);
     }
 
     /**
@@ -95,65 +88,68 @@ public class UsernameData {
      *
      * @param uuid The uuid to get the name for.
      * @return The name(s)({old, new} or {current}) or {"-1"} if the uuid doesn't exist or {"e"} if an error occured.
+     * @throws RateLimitException If the {@link MojangRequestScheduler request scheduler} couldn't send the request in time.
      */
     static String[] getName(String uuid) throws RateLimitException {
-        increaseRequestCount(1);
+        MojangRequestScheduler.acquireInteractive();
+        return requestName(uuid);
+    }
+
+    /**
+     * Send the request for {@link #getName(String)} without waiting for the {@link MojangRequestScheduler request scheduler}.
+     * A token has to be acquired before.
+     */
+    static String[] requestName(String uuid) {
         try {
-            URL urlForGetRequest = new URL("https://api.mojang.com/user/profiles/" + uuid + "/names");
-            HttpURLConnection connection = (HttpURLConnection) urlForGetRequest.openConnection();
-            connection.setRequestMethod("GET");
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                String response = in.readLine();
-                in.close();
-                Matcher m = Pattern.compile("\"name\":\"(.*?)\"").matcher(response);
-                List<String> matches = new ArrayList<>();
-                while (m.find())
-                    matches.add(m.group(1));
-                if (matches.isEmpty()) // uuid invalid
-                    return new String[]{"-"};
-                else if (matches.size() == 1)
-                    return new String[]{matches.get(0)};
-                else
-                    return new String[]{matches.get(matches.size() - 2), matches.get(matches.size() - 1)};
-            } else {
-                System.out.println("GET NOT WORKED");
-                if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST) //UUID invalid
-                    return new String[]{"!"};
-            }
+            HttpService.Response response = HttpService.get("https://api.mojang.com/user/profiles/" + uuid + "/names");
+            if (response.status == HttpURLConnection.HTTP_OK)
+                return parseNames(response.body);
+            System.out.println("GET NOT WORKED");
+            if (response.status == HttpURLConnection.HTTP_BAD_REQUEST) //UUID invalid
+                return new String[]{"!"};
             return new String[]{"e"};
         } catch (IOException ignored) {
             return new String[]{"e"};
         }
     }
 
+    /**
+     * Parse the response of a name history request.
+     *
+     * @return The name(s) like {@link #getName(String)} returns them.
+     */
+    private static String[] parseNames(String response) {
+        Matcher m = NAME_PATTERN.matcher(response);
+        List<String> matches = new ArrayList<>();
+        while (m.find())
+            matches.add(m.group(1));
+        if (matches.isEmpty()) // uuid invalid
+            return new String[]{"-"};
+        else if (matches.size() == 1)
+            return new String[]{matches.get(0)};
+        else
+            return new String[]{matches.get(matches.size() - 2), matches.get(matches.size() - 1)};
+    }
+
     /**
      * Get the minecraft uuid of a minecraft ign
      *
      * @param name The name to get the uuid for.
      * @return The uuid if successful, "!" if the name is invalid, null if an error occured.
+     * @throws RateLimitException If the {@link MojangRequestScheduler request scheduler} couldn't send the request in time.
      */
     static String getUUID(String name) throws RateLimitException {
-        increaseRequestCount(1);
+        MojangRequestScheduler.acquireInteractive();
         try {
-            URL urlForGetRequest = new URL("https://api.mojang.com/users/profiles/minecraft/" + name);
-            //String readLine = null;
-            HttpURLConnection connection = (HttpURLConnection) urlForGetRequest.openConnection();
-            connection.setRequestMethod("GET");
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                String response = in.readLine();
-                in.close();
-                Pattern p = Pattern.compile(".*\"id\":\"(.*?)\"");
-                Matcher m = p.matcher(response);
+            HttpService.Response response = HttpService.get("https://api.mojang.com/users/profiles/minecraft/" + name);
+            if (response.status == HttpURLConnection.HTTP_OK) {
+                Matcher m = UUID_PATTERN.matcher(response.body);
                 if (m.find())
                     return m.group(1);
                 else
                     return "!"; //name invalid
             } else {
-                if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST || responseCode == HttpURLConnection.HTTP_NO_CONTENT) //name invalid
+                if (response.status == HttpURLConnection.HTTP_BAD_REQUEST || response.status == HttpURLConnection.HTTP_NO_CONTENT) //name invalid
                     return "!";
             }
             return null;
@@ -162,52 +158,25 @@ public class UsernameData {
         }
     }
 
-    private void loadData() {
-        Path filepath = Paths.get("userdata/" + guildID + ".userdata");
-        if (Files.exists(filepath)) {
-            List<String> lines;
-            try {
-                lines = Files.readAllLines(filepath);
-            } catch (IOException e) {
-                System.out.println("IO error when reading user data!");
-                uuidMapReference = new SoftReference<>(new HashMap<>());
-                return;
-            }
-            int v = lines.size();
-            { // Compute the next highest power of 2 (http://graphics.stanford.edu/~seander/bithacks.html#RoundUpPowerOf2)
-                v--;
-                v |= v >> 1;
-                v |= v >> 2;
-                v |= v >> 4;
-                v |= v >> 8;
-                v |= v >> 16;
-                v++;
-            }
-            HashMap<Long, String> uuidMap = new HashMap<>(v);
-            for (String line : lines) {
-                String[] data = line.split(" ");
-                try {
-                    uuidMap.put(Long.parseLong(data[0]), data[1]);
-                } catch (IndexOutOfBoundsException ignored) {
-                    System.out.println("Formatting error in file " + guildID + ".userdata!");
-                }
-            }
-            uuidMapReference = new SoftReference<>(uuidMap);
-        } else {
-            uuidMapReference = new SoftReference<>(new HashMap<>());
-            if (!Files.isDirectory(Paths.get("userdata"))) {
+    /**
+     * Compact the {@link UserdataFile userdata file} in the background if its journal got long enough.
+     * This has to be called while holding the lock of this object.
+     */
+    private void compactIfNecessary() {
+        // Only an index that was loaded completely can be written as the new snapshot.
+        if (index == null || compactionScheduled || !file.needsCompaction(index.size()))
+            return;
+        compactionScheduled = true;
+        compactor.execute(() -> {
+            synchronized (this) {
+                compactionScheduled = false;
                 try {
-                    Files.createDirectory(Paths.get("userdata"));
+                    file.compact(index);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    System.out.println("IO error when compacting user data of guild " + guildID + "! " + e.getMessage());
                 }
             }
-            try {
-                Files.createFile(filepath);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        });
     }
 
     /**
@@ -220,7 +189,7 @@ public class UsernameData {
         try {
             UsernameHandler usernameHandler = UsernameHandler.get(m.getGuild().getIdLong());
 
-            String[] nameChange = usernameCache.get(m.getIdLong());
+            String[] nameChange = names(m.getIdLong());
             if (nameChange.length == 1) {
                 if (nameChange[0].equals("-") || nameChange[0].equals("e"))
                     return nameChange;
@@ -274,131 +243,163 @@ public class UsernameData {
         } catch (HierarchyException | InsufficientPermissionException e) {
             e.printStackTrace();
             return new String[]{};
-        } catch (ExecutionException e) {
-            if (e.getCause() instanceof RateLimitException)
-                throw (RateLimitException) e.getCause();
-            else {
-                e.printStackTrace();
-                return new String[]{};
-            }
         }
     }
 
     /**
      * Updates the nicknames of all members that changed their minecraft ign.
+     * The requests are sent with the bulk priority of the {@link MojangRequestScheduler request scheduler}, so this waits for
+     * free tokens instead of failing and interactive requests still get through while it's running.
+     * <p>
+     * At most {@link #MAX_IN_FLIGHT} requests are sent at once through the {@link HttpService} and every
+     * result is applied on the calling thread as soon as it arrives. Requests that Mojang rejects with 429 (or that fail) are
+     * sent again later, up to {@link #MAX_ATTEMPTS} times, and no new requests are sent until the Retry-After time passed.
+     * Every updated member is also passed to the listener right away, so it can be logged even if the update gets interrupted.
      *
-     * @param members A list of all the members to be checked.
+     * @param members  A list of all the members to be checked.
+     * @param listener Gets called on the calling thread with every updated user's ID and names (like in the returned map) as soon as they were applied.
      * @return a map of all updated user's IDs and their old and new username. If the associated uuid doesn't exist anymore the string array is {"-"} and if an error occurred it is {"e"}.
      */
     @Nonnull
-    synchronized Map<Long, String[]> updateAllNames(@Nonnull List<Member> members) throws RateLimitException {
-        HashMap<Long, String> uuidMap = uuidMapReference.get();
-        if (uuidMap == null) {
-            synchronized (this) {
-                uuidMap = uuidMapReference.get();
-                if (uuidMap == null) {
-                    loadData();
-                    uuidMap = uuidMapReference.get();
-                }
+    Map<Long, String[]> updateAllNames(@Nonnull List<Member> members, @Nullable BiConsumer<Long, String[]> listener) {
+        // Only one update per guild at a time, without blocking everything else that needs the lock of this object.
+        synchronized (updateLock) {
+            UuidIndex index = index();
+            Map<Long, String[]> updated = new HashMap<>();
+            BiConsumer<Long, String[]> report = listener == null ? updated::put : (userID, names) -> {
+                updated.put(userID, names);
+                listener.accept(userID, names);
+            };
+
+            // Names that were fetched recently (for example by the update of another guild) don't need another request.
+            HashMap<String, List<Member>> toFetch = new HashMap<>();
+            for (Member member : members) {
+                String uuid = index.getUuid(member.getIdLong());
+                if (uuid == null)
+                    continue;
+                String[] names = NameCache.getIfFresh(uuid, NameCache.BULK_MAX_AGE);
+                if (names != null)
+                    applyUpdatedNames(member.getIdLong(), names, member, report);
+                else
+                    toFetch.computeIfAbsent(uuid, k -> new ArrayList<>(1)).add(member);
             }
-        }
-        assert uuidMap != null;
-
-        Map<Long, Member> memberMap = members.stream().collect(Collectors.toMap(ISnowflake::getIdLong, m -> m));
+            if (toFetch.isEmpty())
+                return updated;
+
+            BlockingQueue<FetchResult> results = new LinkedBlockingQueue<>();
+            Deque<String> queue = new ArrayDeque<>(toFetch.keySet());
+            Map<String, Integer> attempts = new HashMap<>();
+            int inFlight = 0;
+            long resumeTime = 0;
+            try {
+                while (!queue.isEmpty() || inFlight != 0) {
+                    FetchResult result;
+                    while ((result = results.poll()) != null) {
+                        inFlight--;
+                        resumeTime = Math.max(resumeTime, handleResult(result, toFetch, queue, attempts, report));
+                    }
 
-        HashMap<Long, String> toChange = new HashMap<>(uuidMap);
-        toChange.keySet().retainAll(memberMap.keySet());
-        Map<Long, String[]> updated = new ConcurrentHashMap<>();
+                    long pause = resumeTime - System.currentTimeMillis();
+                    if (!queue.isEmpty() && inFlight < MAX_IN_FLIGHT && pause <= 0) {
+                        MojangRequestScheduler.acquireBulk();
+                        fetch(queue.poll(), results);
+                        inFlight++;
+                    } else if (inFlight == 0)
+                        Thread.sleep(pause);
+                    else {
+                        result = queue.isEmpty() || inFlight == MAX_IN_FLIGHT ? results.take() : results.poll(pause, TimeUnit.MILLISECONDS);
+                        if (result != null) {
+                            inFlight--;
+                            resumeTime = Math.max(resumeTime, handleResult(result, toFetch, queue, attempts, report));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Results of requests that are still running get dropped with the queue.
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+            }
 
-        increaseRequestCount(toChange.size() + 20);
+            return updated;
+        }
+    }
 
-        CloseableHttpAsyncClient httpclient = HttpAsyncClients.custom()
-                .setMaxConnPerRoute(1000)
-                .setMaxConnTotal(1000)
-                .build();
+    /**
+     * Send the name request of a uuid and add its result to the queue once it finished.
+     */
+    private static void fetch(String uuid, BlockingQueue<FetchResult> results) {
+        HttpService.getAsync("https://api.mojang.com/user/profiles/" + uuid + "/names").whenComplete((response, ex) -> {
+            if (ex != null) {
+                System.out.println(ex.toString());
+                results.add(new FetchResult(uuid, new String[]{"e"}, true, 0));
+                return;
+            }
 
-        try {
-            httpclient.start();
-            final CountDownLatch latch = new CountDownLatch(toChange.size());
-            for (Map.Entry<Long, String> entry : toChange.entrySet()) {
-                HttpGet request = new HttpGet("https://api.mojang.com/user/profiles/" + entry.getValue() + "/names");
-                httpclient.execute(request, new FutureCallback<HttpResponse>() {
-                    @Override
-                    public void completed(final HttpResponse response) {
+            String[] names;
+            long retryAfter = 0;
+            if (response.status == HttpURLConnection.HTTP_OK)
+                names = parseNames(response.body);
+            else if (response.status == HttpURLConnection.HTTP_BAD_REQUEST) //UUID invalid
+                names = new String[]{"!"};
+            else {
+                System.out.println("GET NOT WORKED");
+                names = new String[]{"e"};
+                if (response.status == TOO_MANY_REQUESTS) {
+                    retryAfter = DEFAULT_RETRY_AFTER;
+                    String header = response.getHeader("Retry-After");
+                    if (header != null) {
                         try {
-                            int responseCode = response.getStatusLine().getStatusCode();
-                            if (responseCode == HttpURLConnection.HTTP_OK) {
-                                String responseBody;
-                                try {
-                                    responseBody = EntityUtils.toString(response.getEntity());
-                                } catch (IOException e) {
-                                    e.printStackTrace();
-                                    updated.put(entry.getKey(), new String[]{"e"});
-                                    return;
-                                }
-
-                                Matcher m = Pattern.compile("\"name\":\"(.*?)\"").matcher(responseBody);
-                                List<String> matches = new ArrayList<>();
-                                while (m.find())
-                                    matches.add(m.group(1));
-
-                                if (matches.isEmpty()) {// uuid invalid
-                                    removeUser(entry.getKey());
-                                    updated.put(entry.getKey(), new String[]{"!"});
-                                } else if (matches.size() == 1) {
-                                    usernameCache.put(entry.getKey(), new String[]{matches.get(0)});
-                                } else {
-                                    String[] res = new String[]{matches.get(matches.size() - 2), matches.get(matches.size() - 1)};
-                                    usernameCache.put(entry.getKey(), res);
-                                    try {
-                                        if (updateName(memberMap.get(entry.getKey())).length == 2) {
-                                            updated.put(entry.getKey(), res);
-                                        }
-                                    } catch (RateLimitException e) {
-                                        e.printStackTrace();
-                                        updated.put(entry.getKey(), new String[]{"e"});
-                                    }
-                                }
-                            } else if (responseCode == HttpURLConnection.HTTP_BAD_REQUEST) {//UUID invalid
-                                removeUser(entry.getKey());
-                                updated.put(entry.getKey(), new String[]{"!"});
-                            } else {
-                                System.out.println("GET NOT WORKED");
-                                updated.put(entry.getKey(), new String[]{"e"});
-                            }
-                        } finally {
-                            latch.countDown();
+                            retryAfter = Long.parseLong(header.trim()) * 1000L;
+                        } catch (NumberFormatException ignored) {
                         }
                     }
+                }
+            }
+            results.add(new FetchResult(uuid, names, response.status == TOO_MANY_REQUESTS, retryAfter));
+        });
+    }
 
-                    @Override
-                    public void failed(final Exception ex) {
-                        System.out.println(ex.toString());
-                        latch.countDown();
-                    }
+    /**
+     * Apply a result of {@link #fetch(String, BlockingQueue)} to all members with that uuid or
+     * queue the uuid again if the request should be retried.
+     *
+     * @return The time until which no new requests should be sent or 0.
+     */
+    private long handleResult(FetchResult result, Map<String, List<Member>> toFetch, Deque<String> queue, Map<String, Integer> attempts, BiConsumer<Long, String[]> report) {
+        if (result.retry && attempts.merge(result.uuid, 1, Integer::sum) < MAX_ATTEMPTS) {
+            queue.add(result.uuid);
+            return result.retryAfter == 0 ? 0 : System.currentTimeMillis() + result.retryAfter;
+        }
 
-                    @Override
-                    public void cancelled() {
-                        System.out.println(" cancelled");
-                        latch.countDown();
-                    }
+        NameCache.put(result.uuid, result.names);
+        for (Member member : toFetch.remove(result.uuid))
+            applyUpdatedNames(member.getIdLong(), result.names, member, report);
+        return 0;
+    }
 
-                });
-            }
-            try {
-                latch.await();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        } finally {
+    /**
+     * Apply the name(s) of a member's uuid for {@link #updateAllNames(List, BiConsumer)}.
+     *
+     * @param names  The name(s) like {@link #getName(String)} returns them.
+     * @param report Gets called if the member was updated.
+     */
+    private void applyUpdatedNames(long userID, String[] names, Member member, BiConsumer<Long, String[]> report) {
+        if (names.length != 1 && names.length != 2)
+            return;
+        if (names[0].equals("-") || names[0].equals("!")) { // uuid invalid
+            removeUser(userID);
+            report.accept(userID, new String[]{"!"});
+        } else if (names[0].equals("e"))
+            report.accept(userID, names);
+        else if (names.length == 2) {
             try {
-                httpclient.close();
-            } catch (IOException e) {
+                if (updateName(member).length == 2)
+                    report.accept(userID, names);
+            } catch (RateLimitException e) {
                 e.printStackTrace();
+                report.accept(userID, new String[]{"e"});
             }
         }
-
-        return updated;
     }
 
     /**
@@ -408,25 +409,16 @@ public class UsernameData {
      * @return possibly-empty string containing a minecraft ign.
      */
     String getUsername(long userID) throws RateLimitException {
-        try {
-            String[] names = usernameCache.get(userID);
-            if (names.length == 0)
-                return "";
-            else if (names.length == 1) {
-                if (names[0].equals("-") || names[0].equals("e"))
-                    return "";
-                else
-                    return names[0];
-            } else
-                return names[1];
-        } catch (ExecutionException e) {
-            if (e.getCause() instanceof RateLimitException)
-                throw (RateLimitException) e.getCause();
-            else {
-                e.printStackTrace();
+        String[] names = names(userID);
+        if (names.length == 0)
+            return "";
+        else if (names.length == 1) {
+            if (names[0].equals("-") || names[0].equals("e"))
                 return "";
-            }
-        }
+            else
+                return names[0];
+        } else
+            return names[1];
     }
 
     /**
@@ -437,16 +429,7 @@ public class UsernameData {
      * @throws RateLimitException If the rate limit got reached.
      */
     String[] getUsernames(long userID) throws RateLimitException {
-        try {
-            return usernameCache.get(userID);
-        } catch (ExecutionException e) {
-            if (e.getCause() instanceof RateLimitException)
-                throw (RateLimitException) e.getCause();
-            else {
-                e.printStackTrace();
-                return new String[]{"e"};
-            }
-        }
+        return names(userID);
     }
 
     /**
@@ -456,22 +439,7 @@ public class UsernameData {
      * @return The {@link Member member's} ID or 0 if none was found.
      */
     long getUserID(String uuid) {
-        HashMap<Long, String> uuidMap = uuidMapReference.get();
-        if (uuidMap == null) {
-            synchronized (this) {
-                uuidMap = uuidMapReference.get();
-                if (uuidMap == null) {
-                    loadData();
-                    uuidMap = uuidMapReference.get();
-                }
-            }
-        }
-        assert uuidMap != null;
-        for (Map.Entry<Long, String> entry : uuidMap.entrySet()) {
-            if (entry.getValue().equals(uuid))
-                return entry.getKey();
-        }
-        return 0;
+        return index().getUserID(uuid);
     }
 
     /**
@@ -490,29 +458,19 @@ public class UsernameData {
 
         synchronized (this) {
             long userID = member.getIdLong();
-            removeUser(userID);
+            UuidIndex index = index();
             try {
-                Files.write(Paths.get("userdata/" + guildID + ".userdata"), (userID + " " + uuid).getBytes(), StandardOpenOption.APPEND);
+                file.link(userID, uuid);
             } catch (IOException e) {
                 e.printStackTrace();
                 return "e";
             }
-
-            HashMap<Long, String> uuidMap = uuidMapReference.get();
-            if (uuidMap != null)
-                uuidMap.put(userID, uuid);
+            index.put(userID, uuid);
+            compactIfNecessary();
 
             updateName(member);
 
-            String[] mcname;
-            try {
-                mcname = usernameCache.get(userID);
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof RateLimitException)
-                    throw (RateLimitException) e.getCause();
-                else
-                    return "e";
-            }
+            String[] mcname = names(userID);
             if (mcname.length == 1) {
                 if (mcname[0].equals("-1"))
                     return "";
@@ -530,26 +488,18 @@ public class UsernameData {
      * @param userID The specified {@link Member member's} ID.
      */
     synchronized void removeUser(long userID) {
-        HashMap<Long, String> uuidMap = uuidMapReference.get();
-        if (uuidMap != null)
-            uuidMap.remove(userID);
-        usernameCache.invalidate(userID);
+        UuidIndex index = index();
+        if (!index.contains(userID))
+            return;
+        index.remove(userID);
 
-        // Update the file
-        List<String> lines;
         try {
-            lines = Files.readAllLines(Paths.get("userdata/" + guildID + ".userdata"));
+            file.unlink(userID);
         } catch (IOException e) {
             e.printStackTrace();
             return;
         }
-        lines.removeIf(s -> s.startsWith(String.valueOf(userID)));
-        try {
-            Files.write(Paths.get("userdata/" + guildID + ".userdata"), lines);
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.out.println("Userdata: " + lines.toString());
-        }
+        compactIfNecessary();
     }
 
     /**
@@ -558,18 +508,7 @@ public class UsernameData {
      * @return possibly-empty list of user IDs.
      */
     List<Long> getSavedUserIDs() {
-        HashMap<Long, String> uuidMap = uuidMapReference.get();
-        if (uuidMap == null) {
-            synchronized (this) {
-                uuidMap = uuidMapReference.get();
-                if (uuidMap == null) {
-                    loadData();
-                    uuidMap = uuidMapReference.get();
-                }
-            }
-        }
-        assert uuidMap != null;
-        return Collections.unmodifiableList(new ArrayList<>(uuidMap.keySet()));
+        return Collections.unmodifiableList(index().getUserIDs());
     }
 
     /**
@@ -578,17 +517,20 @@ public class UsernameData {
      * @return possibly-empty list of minecraft uuids.
      */
     List<String> getSavedUuids() {
-        HashMap<Long, String> uuidMap = uuidMapReference.get();
-        if (uuidMap == null) {
-            synchronized (this) {
-                uuidMap = uuidMapReference.get();
-                if (uuidMap == null) {
-                    loadData();
-                    uuidMap = uuidMapReference.get();
-                }
-            }
+        return Collections.unmodifiableList(index().getUuids());
+    }
+
+    private static class FetchResult {
+        final String uuid;
+        final String[] names;
+        final boolean retry;
+        final long retryAfter;
+
+        FetchResult(String uuid, String[] names, boolean retry, long retryAfter) {
+            this.uuid = uuid;
+            this.names = names;
+            this.retry = retry;
+            this.retryAfter = retryAfter;
         }
-        assert uuidMap != null;
-        return Collections.unmodifiableList(new ArrayList<>(uuidMap.values()));
     }
 }
@@ -16,7 +16,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 public class UsernameHandler {
     private static final HashMap<Long, UsernameHandler> allUsernameHandlers = new HashMap<>();
@@ -139,18 +144,22 @@ public class UsernameHandler {
             return;
         }
 
+        TextChannel nameChannel = guild.getTextChannelById(ServerData.get(guildID).getNameChannel());
+        NameLog log = nameChannel != null && channel != null && !nameChannel.equals(channel) ? new NameLog(nameChannel) : null;
+
         Map<Long, String[]> changed;
         try {
             //This updates the names
-            changed = usernameData.updateAllNames(guild.getMembers());
+            changed = usernameData.updateAllNames(guild.getMembers(), log);
         } catch (Exception e) {
             if (channel != null)
                 CommandUtils.sendException(channel, e);
             return;
+        } finally {
+            if (log != null)
+                log.flush();
         }
 
-        TextChannel nameChannel = guild.getTextChannelById(ServerData.get(guildID).getNameChannel());
-
         if (nameChannel != null && channel != null) {
             EmbedBuilder eb = new EmbedBuilder()
                     .setTitle("Updated Users:")
@@ -165,7 +174,7 @@ public class UsernameHandler {
                 StringBuilder failed = new StringBuilder();
                 for (Map.Entry<Long, String[]> entry : changed.entrySet()) {
                     String[] s = entry.getValue();
-                    if (s[0].equals("-"))
+                    if (s[0].equals("-") || s[0].equals("!"))
                         removed.append("<@").append(entry.getKey()).append(">\n");
                     else if (s[0].equals("e"))
                         failed.append("<@").append(entry.getKey()).append(">\n");
@@ -191,12 +200,6 @@ public class UsernameHandler {
                     else
                         eb.addField("", "Updating failed on " + failed.length() + " users.", false);
                 }
-
-                try {
-                    if (!nameChannel.equals(channel))
-                        nameChannel.sendMessage(eb.build()).queue();
-                } catch (InsufficientPermissionException ignored) {
-                }
             } else {
                 eb.setDescription("No users were updated.");
             }
@@ -280,4 +283,71 @@ public class UsernameHandler {
     public boolean isIgnoredUser(long userID) {
         return ignoredUsers.contains(userID);
     }
+
+    /**
+     * Logs the users updated by {@link #updateAllNames(TextChannel, JDA, boolean)} in the name channel while the update is running.
+     * The lines are collected into one embed which gets sent when it is full or {@link #MAX_DELAY} ms after its first line,
+     * even if the update is waiting for the rate limit and no further lines come in.
+     */
+    private static class NameLog implements BiConsumer<Long, String[]> {
+        private static final int MAX_LENGTH = 2048;
+        private static final long MAX_DELAY = 30000L;
+        private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Name log flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final TextChannel channel;
+        private final StringBuilder lines = new StringBuilder();
+        private ScheduledFuture<?> scheduledFlush = null;
+        private boolean disabled = false;
+
+        private NameLog(TextChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public synchronized void accept(Long userID, String[] names) {
+            if (disabled)
+                return;
+            String line;
+            if (names[0].equals("-") || names[0].equals("!"))
+                line = "<@" + userID + "> was removed from the system.\n";
+            else if (names[0].equals("e"))
+                line = "Updating <@" + userID + "> failed.\n";
+            else if (names.length == 2)
+                line = "<@" + userID + "> (" + names[0] + " -> " + names[1] + ")\n";
+            else
+                return;
+
+            if (lines.length() + line.length() > MAX_LENGTH)
+                flush();
+            if (lines.length() == 0)
+                scheduledFlush = flusher.schedule(this::flush, MAX_DELAY, TimeUnit.MILLISECONDS);
+            lines.append(line);
+        }
+
+        /**
+         * Send the collected lines.
+         */
+        private synchronized void flush() {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (lines.length() == 0 || disabled)
+                return;
+            try {
+                channel.sendMessage(new EmbedBuilder()
+                        .setTitle("Updated Users:")
+                        .setColor(CommandUtils.DEFAULT_COLOR)
+                        .setDescription(lines.toString())
+                        .build()).queue();
+            } catch (InsufficientPermissionException ignored) {
+                disabled = true;
+            }
+            lines.setLength(0);
+        }
+    }
 }
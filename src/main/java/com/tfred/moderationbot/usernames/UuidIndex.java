@@ -0,0 +1,283 @@
+package com.tfred.moderationbot.usernames;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The minecraft uuids of the users of a guild indexed in both directions, so looking up the user of a uuid doesn't
+ * require going through all saved users.
+ * <p>
+ * Everything is stored in primitive arrays: every link is a user ID and a uuid packed into two longs (24 bytes) and
+ * both directions are open addressing hash tables of indices into those arrays (4 bytes per slot, at most 3/4 full).
+ * Removing a link moves the last one into its place, so the arrays never have holes.
+ * Links with the same uuid are chained, the uuid table points to the newest one, so every operation only has to go
+ * through the other users with that uuid and never through all links.
+ * <p>
+ * This class is thread safe. If multiple users have the same uuid only one of them is returned for it.
+ */
+class UuidIndex {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private long[] userIDs;
+    private long[] msbs;
+    private long[] lsbs;
+    // Index + 1 of the next link with the same uuid, 0 for none.
+    private int[] nextSame;
+    private int size = 0;
+    // Index + 1 of the link in the arrays above, 0 for empty slots.
+    private int[] userTable;
+    private int[] uuidTable;
+
+    UuidIndex(int expectedSize) {
+        int tableSize = 16;
+        while (tableSize * 3 / 4 < expectedSize)
+            tableSize <<= 1;
+        allocate(tableSize);
+    }
+
+    /**
+     * Parse a uuid without dashes like the Mojang API returns it.
+     *
+     * @param uuid The uuid.
+     * @return The uuid or null if it isn't 32 hexadecimal digits.
+     */
+    @Nullable
+    static UUID parse(@Nonnull String uuid) {
+        if (uuid.length() != 32)
+            return null;
+        try {
+            return new UUID(Long.parseUnsignedLong(uuid.substring(0, 16), 16), Long.parseUnsignedLong(uuid.substring(16), 16));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The uuid as 32 lower case hexadecimal digits without dashes.
+     */
+    @Nonnull
+    static String toString(long msb, long lsb) {
+        char[] chars = new char[32];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (msb & 0xF)];
+            chars[i + 16] = HEX_DIGITS[(int) (lsb & 0xF)];
+            msb >>>= 4;
+            lsb >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Set the uuid of a user.
+     *
+     * @return False if the uuid is invalid.
+     */
+    synchronized boolean put(long userID, @Nonnull String uuid) {
+        UUID parsed = parse(uuid);
+        if (parsed == null)
+            return false;
+        long msb = parsed.getMostSignificantBits();
+        long lsb = parsed.getLeastSignificantBits();
+
+        remove(userID);
+        if ((size + 1) > userTable.length * 3 / 4)
+            allocate(userTable.length << 1);
+
+        int link = size++;
+        userIDs[link] = userID;
+        msbs[link] = msb;
+        lsbs[link] = lsb;
+        userTable[userSlot(userID)] = link + 1;
+        int uuidSlot = uuidSlot(msb, lsb);
+        nextSame[link] = uuidTable[uuidSlot];
+        uuidTable[uuidSlot] = link + 1;
+        return true;
+    }
+
+    /**
+     * Remove the uuid of a user.
+     */
+    synchronized void remove(long userID) {
+        int slot = userSlot(userID);
+        if (userTable[slot] == 0)
+            return;
+        int link = userTable[slot] - 1;
+        long msb = msbs[link];
+        long lsb = lsbs[link];
+        deleteSlot(userTable, slot, false);
+
+        int uuidSlot = uuidSlot(msb, lsb);
+        if (uuidTable[uuidSlot] != link + 1)
+            nextSame[previousSame(uuidTable[uuidSlot] - 1, link)] = nextSame[link];
+        else if (nextSame[link] != 0)
+            uuidTable[uuidSlot] = nextSame[link];
+        else
+            deleteSlot(uuidTable, uuidSlot, true);
+
+        // Move the last link into the free place.
+        int last = size - 1;
+        if (link != last) {
+            userTable[userSlot(userIDs[last])] = link + 1;
+            int lastUuidSlot = uuidSlot(msbs[last], lsbs[last]);
+            if (uuidTable[lastUuidSlot] == last + 1)
+                uuidTable[lastUuidSlot] = link + 1;
+            else
+                nextSame[previousSame(uuidTable[lastUuidSlot] - 1, last)] = link + 1;
+            userIDs[link] = userIDs[last];
+            msbs[link] = msbs[last];
+            lsbs[link] = lsbs[last];
+            nextSame[link] = nextSame[last];
+        }
+        size--;
+    }
+
+    /**
+     * @return The uuid of a user without dashes or null if the user has none.
+     */
+    @Nullable
+    synchronized String getUuid(long userID) {
+        int link = userTable[userSlot(userID)] - 1;
+        return link == -1 ? null : toString(msbs[link], lsbs[link]);
+    }
+
+    /**
+     * @return The ID of the user with a uuid or 0 if there is none.
+     */
+    synchronized long getUserID(@Nonnull String uuid) {
+        UUID parsed = parse(uuid);
+        if (parsed == null)
+            return 0;
+        int link = uuidTable[uuidSlot(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits())] - 1;
+        return link == -1 ? 0 : userIDs[link];
+    }
+
+    synchronized List<Long> getUserIDs() {
+        List<Long> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            ids.add(userIDs[i]);
+        return ids;
+    }
+
+    synchronized List<String> getUuids() {
+        List<String> uuids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            uuids.add(toString(msbs[i], lsbs[i]));
+        return uuids;
+    }
+
+    /**
+     * @return True, if the user has a uuid.
+     */
+    synchronized boolean contains(long userID) {
+        return userTable[userSlot(userID)] != 0;
+    }
+
+    /**
+     * @return One "userID uuid" line per user.
+     */
+    synchronized List<String> toLines() {
+        List<String> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            lines.add(userIDs[i] + " " + toString(msbs[i], lsbs[i]));
+        return lines;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private static int hash(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return (int) (value ^ (value >>> 32));
+    }
+
+    private static int uuidHash(long msb, long lsb) {
+        return hash(msb ^ Long.rotateLeft(lsb, 32));
+    }
+
+    /**
+     * @return The slot of the user or the empty slot where it would be.
+     */
+    private int userSlot(long userID) {
+        int mask = userTable.length - 1;
+        int slot = hash(userID) & mask;
+        while (userTable[slot] != 0 && userIDs[userTable[slot] - 1] != userID)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * @return The slot of the uuid or the empty slot where it would be.
+     */
+    private int uuidSlot(long msb, long lsb) {
+        int mask = uuidTable.length - 1;
+        int slot = uuidHash(msb, lsb) & mask;
+        while (uuidTable[slot] != 0 && (msbs[uuidTable[slot] - 1] != msb || lsbs[uuidTable[slot] - 1] != lsb))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * @return The link before a link in the chain of links with the same uuid.
+     */
+    private int previousSame(int first, int link) {
+        int previous = first;
+        while (nextSame[previous] != link + 1)
+            previous = nextSame[previous] - 1;
+        return previous;
+    }
+
+    /**
+     * Empty a slot and move later entries of the same probe sequence back so lookups still find them.
+     */
+    private void deleteSlot(int[] table, int slot, boolean uuids) {
+        int mask = table.length - 1;
+        int hole = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            int entry = table[i];
+            if (entry == 0)
+                break;
+            int link = entry - 1;
+            int home = (uuids ? uuidHash(msbs[link], lsbs[link]) : hash(userIDs[link])) & mask;
+            // The entry can be moved into the hole if the hole is between its home slot and its current slot.
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                table[hole] = entry;
+                hole = i;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    /**
+     * Resize the arrays and rebuild both tables.
+     */
+    private void allocate(int tableSize) {
+        int capacity = tableSize * 3 / 4;
+        long[] oldUserIDs = userIDs;
+        userIDs = new long[capacity];
+        long[] oldMsbs = msbs;
+        msbs = new long[capacity];
+        long[] oldLsbs = lsbs;
+        lsbs = new long[capacity];
+        nextSame = new int[capacity];
+        if (oldUserIDs != null) {
+            System.arraycopy(oldUserIDs, 0, userIDs, 0, size);
+            System.arraycopy(oldMsbs, 0, msbs, 0, size);
+            System.arraycopy(oldLsbs, 0, lsbs, 0, size);
+        }
+
+        userTable = new int[tableSize];
+        uuidTable = new int[tableSize];
+        for (int link = 0; link < size; link++) {
+            userTable[userSlot(userIDs[link])] = link + 1;
+            int uuidSlot = uuidSlot(msbs[link], lsbs[link]);
+            nextSame[link] = uuidTable[uuidSlot];
+            uuidTable[uuidSlot] = link + 1;
+        }
+    }
+}
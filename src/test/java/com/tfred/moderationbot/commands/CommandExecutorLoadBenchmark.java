@@ -0,0 +1,95 @@
+package com.tfred.moderationbot.commands;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load test of the blocking pool of the {@link CommandExecutor} on platform threads and on virtual threads.
+ * <p>
+ * Every command waits for a while like a command waiting for a network request or for discord. The commands of many guilds
+ * are submitted as fast as the pool accepts them and the throughput, the wait for a thread and the memory get printed.
+ * Since COMMAND_VIRTUAL_THREADS is read once when the executor class gets loaded, every mode runs in its own JVM.
+ * Virtual threads need a JDK with virtual threads (21+), on older ones the second run uses platform threads as well.
+ * <p>
+ * java -cp build/classes/java/main:build/classes/java/test:libs... com.tfred.moderationbot.commands.CommandExecutorLoadBenchmark [guilds] [blockMillis] [seconds]
+ */
+public class CommandExecutorLoadBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("run")) {
+            run(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+
+        String guilds = args.length > 0 ? args[0] : "200";
+        String blockMillis = args.length > 1 ? args[1] : "50";
+        String seconds = args.length > 2 ? args[2] : "10";
+        System.out.println(guilds + " guilds, commands block for " + blockMillis + " ms, " + seconds + " s per mode");
+        for (String virtual : new String[]{"false", "true"}) {
+            ProcessBuilder builder = new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"),
+                    CommandExecutorLoadBenchmark.class.getName(), "run", guilds, blockMillis, seconds);
+            builder.environment().put("COMMAND_VIRTUAL_THREADS", virtual);
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    System.out.println(line);
+            }
+            process.waitFor();
+        }
+    }
+
+    private static void run(int guilds, int blockMillis, int seconds) throws InterruptedException {
+        CommandExecutor.Pool pool = new CommandExecutor().blocking;
+        Runnable command = () -> {
+            try {
+                Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long guild = 0;
+        while (System.nanoTime() < end) {
+            // A rejected command is tried again a moment later, like a user would.
+            if (!pool.execute(guild, command))
+                LockSupport.parkNanos(100000);
+            guild = (guild + 1) % guilds;
+        }
+        long completed = pool.getCompletedCount();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%-16s %8.0f commands/s  wait avg %7.1f ms max %7.1f ms  rejected %8d  peak threads %5d  heap %6.1f MB  peak RSS %s%n",
+                pool.virtualThreads ? "virtual threads:" : "platform pool:",
+                completed / elapsed, pool.getAverageWaitMillis(), pool.getMaxWaitMillis(), pool.getRejectedCount(),
+                ManagementFactory.getThreadMXBean().getPeakThreadCount(), heap / 1e6, peakRss());
+        System.exit(0);
+    }
+
+    /**
+     * @return The peak resident set size of this JVM or "n/a" if it can't be read (only Linux has /proc).
+     */
+    private static String peakRss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:"))
+                    return line.substring(6).trim();
+            }
+        } catch (IOException ignored) {
+        }
+        return "n/a";
+    }
+}
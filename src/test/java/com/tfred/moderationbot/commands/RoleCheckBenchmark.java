@@ -0,0 +1,217 @@
+package com.tfred.moderationbot.commands;
+
+import com.tfred.moderationbot.ServerData;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.ISnowflake;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A benchmark of the moderator check of {@link Command#allowedUser(Member)} against the check it replaced, which collected
+ * the member's role IDs into a boxed list and looked them up in a boxed set of mod roles.
+ * <p>
+ * The members are proxies whose getRoles() copies and sorts the roles like JDA's members do, so both checks pay the same
+ * price for getting the roles. The lookup is also measured alone on roles that were fetched before. Both the time and the
+ * allocated bytes per check get printed. A proxy boxes the result of getIdLong(), so the bytes left for the new lookup
+ * come from the proxy and not from the check.
+ * <p>
+ * This creates serverdata/ in the working directory, so it has to be run from an empty directory:
+ * java -cp build/classes/java/main:build/classes/java/test:libs... com.tfred.moderationbot.commands.RoleCheckBenchmark [members] [rounds]
+ */
+public class RoleCheckBenchmark {
+    private static final long GUILD = 1000;
+    private static final int GUILD_ROLES = 50;
+    private static final int MOD_ROLES = 3;
+    private static final int MAX_MEMBER_ROLES = 10;
+
+    public static void main(String[] args) {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        Random random = new Random(1);
+        List<Role> roles = new ArrayList<>(GUILD_ROLES);
+        for (int i = 0; i < GUILD_ROLES; i++)
+            roles.add(role(1000000000000000000L + random.nextInt(Integer.MAX_VALUE)));
+
+        ServerData serverData = ServerData.get(GUILD);
+        Set<Long> boxedModRoles = new HashSet<>();
+        for (int i = 0; i < MOD_ROLES; i++) {
+            serverData.addModRole(roles.get(i).getIdLong());
+            boxedModRoles.add(roles.get(i).getIdLong());
+        }
+
+        Guild guild = proxy(Guild.class, (method, methodArgs) -> method.equals("getIdLong") ? GUILD : null);
+        Member[] memberArray = new Member[members];
+        for (int i = 0; i < members; i++) {
+            List<Role> memberRoles = new ArrayList<>();
+            int count = random.nextInt(MAX_MEMBER_ROLES + 1);
+            // Roughly a tenth of the members are moderators, the others don't have any mod role.
+            int from = random.nextInt(10) == 0 ? 0 : MOD_ROLES;
+            for (int j = 0; j < count; j++)
+                memberRoles.add(roles.get(from + random.nextInt(GUILD_ROLES - from)));
+            memberArray[i] = member(guild, memberRoles);
+        }
+
+        Command command = new Command("benchmark", new String[0], "", "", new Permission[0], false, false, true) {
+            @Override
+            protected void execute(@Nonnull CommandEvent event) {
+            }
+        };
+
+        List<List<Role>> memberRoles = new ArrayList<>(members);
+        for (Member member : memberArray)
+            memberRoles.add(member.getRoles());
+
+        long oldTime = 0, newTime = 0, oldBytes = 0, newBytes = 0;
+        long oldLookupTime = 0, newLookupTime = 0, oldLookupBytes = 0, newLookupBytes = 0;
+        int oldAllowed = 0, newAllowed = 0;
+        // The first half of the rounds only warm up the JIT.
+        for (int round = 0; round < rounds; round++) {
+            boolean measured = round >= rounds / 2;
+            long bytes = allocatedBytes();
+            long t = System.nanoTime();
+            int allowed = 0;
+            for (Member member : memberArray) {
+                if (oldAllowedUser(member, boxedModRoles))
+                    allowed++;
+            }
+            if (measured) {
+                oldTime += System.nanoTime() - t;
+                oldBytes += allocatedBytes() - bytes;
+                oldAllowed = allowed;
+            }
+
+            bytes = allocatedBytes();
+            t = System.nanoTime();
+            allowed = 0;
+            for (Member member : memberArray) {
+                if (command.allowedUser(member))
+                    allowed++;
+            }
+            if (measured) {
+                newTime += System.nanoTime() - t;
+                newBytes += allocatedBytes() - bytes;
+                newAllowed = allowed;
+            }
+
+            bytes = allocatedBytes();
+            t = System.nanoTime();
+            for (List<Role> r : memberRoles)
+                oldIsModerator(r, boxedModRoles);
+            if (measured) {
+                oldLookupTime += System.nanoTime() - t;
+                oldLookupBytes += allocatedBytes() - bytes;
+            }
+
+            bytes = allocatedBytes();
+            t = System.nanoTime();
+            for (List<Role> r : memberRoles)
+                isModerator(r, serverData);
+            if (measured) {
+                newLookupTime += System.nanoTime() - t;
+                newLookupBytes += allocatedBytes() - bytes;
+            }
+        }
+        if (oldAllowed != newAllowed)
+            throw new IllegalStateException("The checks disagree: " + oldAllowed + " != " + newAllowed);
+
+        double checks = (double) members * (rounds - rounds / 2);
+        System.out.printf("%d members, %d allowed per round%n", members, newAllowed);
+        System.out.printf("  allowedUser, boxed list and set: %7.1f ns/check %7.1f bytes/check%n", oldTime / checks, oldBytes / checks);
+        System.out.printf("  allowedUser, sorted long[]:      %7.1f ns/check %7.1f bytes/check%n", newTime / checks, newBytes / checks);
+        System.out.printf("  lookup only, boxed list and set: %7.1f ns/check %7.1f bytes/check%n", oldLookupTime / checks, oldLookupBytes / checks);
+        System.out.printf("  lookup only, sorted long[]:      %7.1f ns/check %7.1f bytes/check%n", newLookupTime / checks, newLookupBytes / checks);
+        System.exit(0);
+    }
+
+    /**
+     * The moderator check before the mod roles were kept in a sorted long[].
+     */
+    private static boolean oldAllowedUser(Member member, Set<Long> modRoles) {
+        if (member.hasPermission(Permission.ADMINISTRATOR))
+            return true;
+        return oldIsModerator(member.getRoles(), modRoles);
+    }
+
+    private static boolean oldIsModerator(List<Role> memberRoles, Set<Long> modRoles) {
+        List<Long> roles = memberRoles.stream().map(ISnowflake::getIdLong).collect(Collectors.toList());
+        for (long id : roles) {
+            if (modRoles.contains(id))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The lookup of {@link Command#allowedUser(Member)} without getting the roles.
+     */
+    private static boolean isModerator(List<Role> memberRoles, ServerData serverData) {
+        for (Role role : memberRoles) {
+            if (serverData.isModRole(role.getIdLong()))
+                return true;
+        }
+        return false;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Role role(long id) {
+        return proxy(Role.class, (method, args) -> method.equals("getIdLong") ? id : null);
+    }
+
+    private static Member member(Guild guild, List<Role> roles) {
+        return proxy(Member.class, (method, args) -> {
+            switch (method) {
+                case "getGuild":
+                    return guild;
+                case "hasPermission":
+                    return false;
+                case "getRoles":
+                    // Like JDA: a sorted, unmodifiable copy on every call.
+                    List<Role> copy = new ArrayList<>(roles);
+                    copy.sort(Comparator.comparingLong(Role::getIdLong).reversed());
+                    return Collections.unmodifiableList(copy);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    Object result = handler.invoke(method.getName(), args);
+                    if (result == null && method.getReturnType().isPrimitive())
+                        throw new UnsupportedOperationException(method.getName());
+                    return result;
+            }
+        });
+    }
+}
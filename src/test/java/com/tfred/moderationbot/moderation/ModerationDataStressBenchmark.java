@@ -0,0 +1,194 @@
+package com.tfred.moderationbot.moderation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A multi-threaded stress benchmark of {@link ModerationData} across many guilds.
+ * <p>
+ * It first measures the cold start: one guild with a large history (imported from userID.punishments files) gets loaded
+ * while the other guilds are loaded at the same time, which shows whether the big guild blocks them. Then a mix of reads
+ * and writes on random guilds runs with 1, 2, 4... up to the maximum amount of threads (twice the amount of cores by
+ * default) and the throughput and latencies of every operation get printed for every thread count, which shows how the
+ * per-guild locks scale.
+ * <p>
+ * This writes to moderations/ in the working directory, so it has to be run from an empty directory:
+ * java -cp build/classes/java/main:build/classes/java/test:libs... com.tfred.moderationbot.moderation.ModerationDataStressBenchmark [guilds] [maxThreads] [secondsPerStep] [bigHistory]
+ */
+public class ModerationDataStressBenchmark {
+    private static final long BIG_GUILD = 1000;
+    private static final int USERS = 500;
+    private static final int MODERATORS = 20;
+    private static final int SMALL_HISTORY = 200;
+    private static final String[] OPERATIONS = {"userPunishments", "moderatorStats", "case", "leaderboard", "save"};
+    private static final AtomicInteger nextID = new AtomicInteger(1);
+
+    public static void main(String[] args) throws Exception {
+        int guilds = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int bigHistory = args.length > 3 ? Integer.parseInt(args[3]) : 200000;
+
+        if (Files.exists(Paths.get("moderations"))) {
+            System.out.println("moderations/ already exists in the working directory, run this from an empty directory.");
+            return;
+        }
+
+        System.out.println("Seeding " + guilds + " guilds (" + bigHistory + " punishments in the big one)...");
+        seed(BIG_GUILD, bigHistory);
+        for (int g = 1; g <= guilds; g++)
+            seed(BIG_GUILD + g, SMALL_HISTORY);
+
+        coldStart(guilds, maxThreads);
+        for (int threads = 1; ; threads *= 2) {
+            steadyState(guilds, Math.min(threads, maxThreads), seconds);
+            if (threads >= maxThreads)
+                break;
+        }
+        System.exit(0);
+    }
+
+    private static void seed(long guildID, int punishments) throws IOException {
+        Path dir = Paths.get("moderations/" + guildID);
+        Files.createDirectories(dir);
+        Random random = new Random(guildID);
+        List<List<String>> userLines = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++)
+            userLines.add(new ArrayList<>());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < punishments; i++) {
+            int user = random.nextInt(USERS);
+            long date = now - (long) (random.nextDouble() * 400 * 86400000L);
+            userLines.get(user).add(new BanPunishment(user + 1, nextID.getAndIncrement(), date, 1 + random.nextInt(MODERATORS), (short) 1, 20160, "Stress test").toStringWithoutUserID());
+        }
+        for (int i = 0; i < USERS; i++) {
+            if (!userLines.get(i).isEmpty())
+                Files.write(dir.resolve((i + 1) + ".punishments"), userLines.get(i));
+        }
+    }
+
+    /**
+     * Load the big guild and all small guilds at the same time and print how long the small guilds took.
+     */
+    private static void coldStart(int guilds, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<Long> big = executor.submit(() -> {
+            start.await();
+            long t = System.nanoTime();
+            ModerationData.getModeratorStats(BIG_GUILD, 1);
+            return System.nanoTime() - t;
+        });
+        List<Future<Long>> small = new ArrayList<>(guilds);
+        for (int g = 1; g <= guilds; g++) {
+            long guildID = BIG_GUILD + g;
+            small.add(executor.submit(() -> {
+                start.await();
+                // Give the big guild a head start, so the small ones have to get past it.
+                Thread.sleep(5);
+                long t = System.nanoTime();
+                ModerationData.getModeratorStats(guildID, 1);
+                return System.nanoTime() - t;
+            }));
+        }
+        start.countDown();
+
+        long[] smallTimes = new long[guilds];
+        for (int i = 0; i < guilds; i++)
+            smallTimes[i] = small.get(i).get();
+        long bigTime = big.get();
+        executor.shutdown();
+
+        Arrays.sort(smallTimes);
+        System.out.printf("Cold start: big guild %.1f ms, small guilds %.1f ms median, %.1f ms max%n",
+                bigTime / 1e6, smallTimes[guilds / 2] / 1e6, smallTimes[guilds - 1] / 1e6);
+    }
+
+    /**
+     * Run a mix of 80% reads and 20% writes on random guilds and print the throughput and latencies.
+     */
+    private static void steadyState(int guilds, int threads, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<long[][]>> results = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            results.add(executor.submit(() -> run(guilds, end, new Random(seed))));
+        }
+
+        long[][] latencies = new long[OPERATIONS.length][0];
+        for (Future<long[][]> result : results) {
+            long[][] threadLatencies = result.get();
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                long[] merged = Arrays.copyOf(latencies[op], latencies[op].length + threadLatencies[op].length);
+                System.arraycopy(threadLatencies[op], 0, merged, latencies[op].length, threadLatencies[op].length);
+                latencies[op] = merged;
+            }
+        }
+        executor.shutdown();
+
+        long total = 0;
+        for (long[] l : latencies)
+            total += l.length;
+        System.out.printf("Steady state: %d threads, %d guilds, %.0f ops/s%n", threads, guilds + 1, total / (double) seconds);
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            long[] l = latencies[op];
+            if (l.length == 0)
+                continue;
+            Arrays.sort(l);
+            System.out.printf("  %-16s %8d ops  p50 %8.1f us  p99 %8.1f us  max %8.1f us%n", OPERATIONS[op], l.length,
+                    l[l.length / 2] / 1e3, l[(int) (l.length * 0.99)] / 1e3, l[l.length - 1] / 1e3);
+        }
+    }
+
+    private static long[][] run(int guilds, long end, Random random) throws IOException {
+        long[][] latencies = new long[OPERATIONS.length][1024];
+        int[] counts = new int[OPERATIONS.length];
+        while (System.nanoTime() < end) {
+            // The big guild gets a share of the traffic like the other guilds.
+            long guildID = BIG_GUILD + random.nextInt(guilds + 1);
+            long userID = 1 + random.nextInt(USERS);
+            long moderatorID = 1 + random.nextInt(MODERATORS);
+            int roll = random.nextInt(100);
+            int op = roll < 40 ? 0 : roll < 60 ? 1 : roll < 75 ? 2 : roll < 80 ? 3 : 4;
+
+            long t = System.nanoTime();
+            switch (op) {
+                case 0:
+                    ModerationData.getUserPunishments(guildID, userID);
+                    break;
+                case 1:
+                    ModerationData.getModeratorStats(guildID, moderatorID);
+                    break;
+                case 2:
+                    ModerationData.getPunishmentById(guildID, 1 + random.nextInt(nextID.get() - 1));
+                    break;
+                case 3:
+                    ModerationData.getPunishmentLeaderboard(guildID, 30);
+                    break;
+                default:
+                    ModerationData.savePunishment(guildID, new BanPunishment(userID, nextID.getAndIncrement(), System.currentTimeMillis(), moderatorID, (short) 1, 20160, "Stress test"));
+            }
+            long latency = System.nanoTime() - t;
+
+            if (counts[op] == latencies[op].length)
+                latencies[op] = Arrays.copyOf(latencies[op], counts[op] * 2);
+            latencies[op][counts[op]++] = latency;
+        }
+        for (int op = 0; op < OPERATIONS.length; op++)
+            latencies[op] = Arrays.copyOf(latencies[op], counts[op]);
+        return latencies;
+    }
+}
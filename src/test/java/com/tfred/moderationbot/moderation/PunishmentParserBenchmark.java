@@ -0,0 +1,152 @@
+package com.tfred.moderationbot.moderation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * A benchmark of {@link PunishmentParser} against the regex parse methods of the punishment classes.
+ * <p>
+ * Lines of every punishment type are parsed once with 18 digit IDs (accounts from before 2022) and once with 19 digit IDs,
+ * as strings with the tokenizer, as strings with the regex parsers and as UTF-8 bytes into a reused {@link PunishmentRecord}
+ * like the punishment log scans do. Every line has to take the fast path, otherwise the benchmark stops.
+ * <p>
+ * java -cp build/classes/java/main:build/classes/java/test:libs... com.tfred.moderationbot.moderation.PunishmentParserBenchmark [lines] [rounds]
+ */
+public class PunishmentParserBenchmark {
+    private static final char[] TYPES = {'m', 'b', 'c', 'n', 'x'};
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (int digits = 18; digits <= 19; digits++) {
+            String[] strings = lines(lines, digits);
+            ByteBuffer data = encode(strings);
+            checkFastPath(strings, data);
+
+            // The first rounds only warm up the JIT.
+            long tokenizer = 0, regex = 0, bytes = 0;
+            for (int round = 0; round < rounds; round++) {
+                boolean measured = round >= rounds / 2;
+                long t = System.nanoTime();
+                parseStrings(strings);
+                if (measured)
+                    tokenizer += System.nanoTime() - t;
+                t = System.nanoTime();
+                parseRegex(strings);
+                if (measured)
+                    regex += System.nanoTime() - t;
+                t = System.nanoTime();
+                parseBytes(data);
+                if (measured)
+                    bytes += System.nanoTime() - t;
+            }
+
+            double count = (double) lines * (rounds - rounds / 2);
+            System.out.printf("%d digit IDs: regex %.0f ns/line, tokenizer %.0f ns/line, bytes into record %.0f ns/line%n",
+                    digits, regex / count, tokenizer / count, bytes / count);
+        }
+    }
+
+    private static String[] lines(int count, int digits) {
+        Random random = new Random(digits);
+        long min = digits == 18 ? 100000000000000000L : 1000000000000000000L;
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            long userID = min + (long) (random.nextDouble() * 8 * min);
+            long moderatorID = min + (long) (random.nextDouble() * 8 * min);
+            long date = 1600000000000L + (long) (random.nextDouble() * 100000000000L);
+            int id = i + 1;
+            Punishment p;
+            switch (TYPES[i % TYPES.length]) {
+                case 'm':
+                    p = new MutePunishment(userID, id, date, moderatorID, (short) (1 + random.nextInt(3)), 60, "Spamming in general");
+                    break;
+                case 'b':
+                    p = new BanPunishment(userID, id, date, moderatorID, (short) (1 + random.nextInt(3)), 20160, "Hacking \"fly\"");
+                    break;
+                case 'c':
+                    p = new ChannelBanPunishment(userID, id, date, moderatorID, min + random.nextInt(1000000), 1440, "Off topic");
+                    break;
+                case 'n':
+                    p = new NamePunishment(userID, id, date, moderatorID, 30, "Inappropriate name");
+                    break;
+                default:
+                    p = new PardonPunishment(userID, id, date, moderatorID, random.nextBoolean(), Math.max(1, id - 1), 'b', "Appealed");
+            }
+            lines[i] = p.toString();
+        }
+        return lines;
+    }
+
+    private static ByteBuffer encode(String[] lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines)
+            sb.append(line).append('\n');
+        return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void checkFastPath(String[] lines, ByteBuffer data) {
+        for (String line : lines) {
+            if (PunishmentParser.parse(line) == null)
+                throw new IllegalStateException("Not parsed by the tokenizer: " + line);
+        }
+        PunishmentRecord record = new PunishmentRecord();
+        int pos = 0;
+        for (String line : lines) {
+            int length = line.getBytes(StandardCharsets.UTF_8).length;
+            if (!PunishmentParser.parse(data, pos, length, record))
+                throw new IllegalStateException("Not parsed from the bytes: " + line);
+            pos += length + 1;
+        }
+    }
+
+    private static int parseStrings(String[] lines) {
+        int ids = 0;
+        for (String line : lines)
+            ids += PunishmentParser.parse(line).id;
+        return ids;
+    }
+
+    private static int parseRegex(String[] lines) {
+        int ids = 0;
+        for (String line : lines) {
+            Punishment p;
+            switch (line.charAt(0)) {
+                case 'm':
+                    p = MutePunishment.parseMutePunishment(line);
+                    break;
+                case 'b':
+                    p = BanPunishment.parseBanPunishment(line);
+                    break;
+                case 'c':
+                    p = ChannelBanPunishment.parseChannelBanPunishment(line);
+                    break;
+                case 'n':
+                    p = NamePunishment.parseNamePunishment(line);
+                    break;
+                default:
+                    p = PardonPunishment.parsePardonPunishment(line);
+            }
+            ids += p.id;
+        }
+        return ids;
+    }
+
+    private static int parseBytes(ByteBuffer data) {
+        PunishmentRecord record = new PunishmentRecord();
+        int ids = 0;
+        int pos = 0;
+        int end = data.limit();
+        while (pos < end) {
+            int lineEnd = pos;
+            while (data.get(lineEnd) != '\n')
+                lineEnd++;
+            PunishmentParser.parse(data, pos, lineEnd - pos, record);
+            ids += record.id;
+            pos = lineEnd + 1;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,90 @@
+package com.tfred.moderationbot.moderation;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PunishmentParserTest {
+    // Snowflakes of accounts and channels created since 2022 have 19 digits.
+    private static final long USER = 1012345678901234567L;
+    private static final long MODERATOR = 1098765432109876543L;
+    private static final long CHANNEL = 1055555555555555555L;
+    private static final long OLD_USER = 470696578403794967L;
+    private static final long DATE = 1650000000000L;
+
+    private static Punishment[] punishments(long userID) {
+        return new Punishment[]{
+                new MutePunishment(userID, 1, DATE, MODERATOR, (short) 2, 60, "Spam"),
+                new BanPunishment(userID, 2, DATE, MODERATOR, (short) 1, 20160, "Hacking \"x\"\nnew line"),
+                new ChannelBanPunishment(userID, 3, DATE, MODERATOR, CHANNEL, 1440, "Off topic"),
+                new NamePunishment(userID, 4, DATE, MODERATOR, 30, "Name ä"),
+                new PardonPunishment(userID, 5, DATE, MODERATOR, true, 2, 'b', "Appeal")
+        };
+    }
+
+    @Test
+    public void roundTripsNineteenDigitIDs() {
+        for (long userID : new long[]{USER, OLD_USER}) {
+            for (Punishment p : punishments(userID)) {
+                String line = p.toString();
+                Punishment parsed = PunishmentParser.parse(line);
+                assertNotNull(line, parsed);
+                assertEquals(line, parsed.toString());
+
+                Punishment withoutUserID = PunishmentParser.parse(userID, p.toStringWithoutUserID());
+                assertNotNull(line, withoutUserID);
+                assertEquals(line, withoutUserID.toString());
+
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                PunishmentRecord record = new PunishmentRecord();
+                assertTrue(line, PunishmentParser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, record));
+                assertEquals(userID, record.userID);
+                assertEquals(MODERATOR, record.moderatorID);
+                assertEquals(line, record.toPunishment().toString());
+            }
+        }
+    }
+
+    @Test
+    public void matchesTheRegexParsers() {
+        for (Punishment p : punishments(USER)) {
+            String line = p.toString();
+            Punishment regex;
+            switch (line.charAt(0)) {
+                case 'm':
+                    regex = MutePunishment.parseMutePunishment(line);
+                    break;
+                case 'b':
+                    regex = BanPunishment.parseBanPunishment(line);
+                    break;
+                case 'c':
+                    regex = ChannelBanPunishment.parseChannelBanPunishment(line);
+                    break;
+                case 'n':
+                    regex = NamePunishment.parseNamePunishment(line);
+                    break;
+                default:
+                    regex = PardonPunishment.parsePardonPunishment(line);
+            }
+            assertNotNull(line, regex);
+            assertEquals(regex.toString(), PunishmentParser.parse(line).toString());
+        }
+    }
+
+    @Test
+    public void rejectsNumbersThatOverflow() {
+        assertNull(PunishmentParser.parse("n 9223372036854775808 4 " + DATE + " " + MODERATOR + " 30 Name"));
+        assertNull(PunishmentParser.parse("n 12345678901234567890 4 " + DATE + " " + MODERATOR + " 30 Name"));
+        assertNotNull(PunishmentParser.parse("n 9223372036854775807 4 " + DATE + " " + MODERATOR + " 30 Name"));
+
+        byte[] bytes = ("c " + USER + " 3 " + DATE + " " + MODERATOR + " 99999999999999999999 1440 Off topic").getBytes(StandardCharsets.UTF_8);
+        assertFalse(PunishmentParser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, new PunishmentRecord()));
+    }
+}
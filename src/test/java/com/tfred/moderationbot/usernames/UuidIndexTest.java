@@ -0,0 +1,123 @@
+package com.tfred.moderationbot.usernames;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares the {@link UuidIndex} with a HashMap of user IDs to uuids after random puts and removes.
+ * Few uuids are shared by many users, so the chains of links with the same uuid get long and change often.
+ */
+public class UuidIndexTest {
+    @Test
+    public void matchesHashMapModel() {
+        for (long seed = 0; seed < 20; seed++)
+            randomOperations(seed, 300, 40, 20000);
+    }
+
+    @Test
+    public void matchesHashMapModelWithManyUsers() {
+        for (long seed = 100; seed < 103; seed++)
+            randomOperations(seed, 20000, 5000, 100000);
+    }
+
+    @Test
+    public void matchesHashMapModelWithOneUuid() {
+        randomOperations(200, 500, 1, 20000);
+    }
+
+    @Test
+    public void rejectsInvalidUuids() {
+        UuidIndex index = new UuidIndex(0);
+        assertFalse(index.put(1, "not a uuid"));
+        assertFalse(index.put(1, "0123456789abcdef0123456789abcdeg"));
+        assertFalse(index.contains(1));
+        assertEquals(0, index.getUserID("not a uuid"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void parsesAndFormatsUuids() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            long msb = random.nextLong();
+            long lsb = random.nextLong();
+            String uuid = UuidIndex.toString(msb, lsb);
+            assertEquals(32, uuid.length());
+            assertEquals(msb, UuidIndex.parse(uuid).getMostSignificantBits());
+            assertEquals(lsb, UuidIndex.parse(uuid).getLeastSignificantBits());
+        }
+        assertNull(UuidIndex.parse("0123"));
+    }
+
+    private static void randomOperations(long seed, int users, int uuids, int operations) {
+        Random random = new Random(seed);
+        UuidIndex index = new UuidIndex(random.nextInt(users / 4 + 1));
+        Map<Long, String> model = new HashMap<>();
+        String[] pool = new String[uuids];
+        for (int i = 0; i < pool.length; i++)
+            pool[i] = UuidIndex.toString(random.nextLong(), random.nextLong());
+
+        for (int op = 0; op < operations; op++) {
+            // User IDs are snowflakes, the upper bits only change slowly.
+            long userID = 470696578403794967L + random.nextInt(users);
+            if (random.nextInt(3) == 0) {
+                index.remove(userID);
+                model.remove(userID);
+            } else {
+                String uuid = pool[random.nextInt(pool.length)];
+                assertTrue(index.put(userID, uuid));
+                model.put(userID, uuid);
+            }
+            if (op % (operations / 20) == 0)
+                check("seed " + seed + ", operation " + op, index, model, pool, 470696578403794967L, users);
+        }
+        check("seed " + seed + ", end", index, model, pool, 470696578403794967L, users);
+    }
+
+    private static void check(String message, UuidIndex index, Map<Long, String> model, String[] pool, long firstUser, int users) {
+        assertEquals(message, model.size(), index.size());
+        for (long userID = firstUser; userID < firstUser + users; userID++) {
+            if (!Objects.equals(model.get(userID), index.getUuid(userID)))
+                fail(message + ": uuid of " + userID + " is " + index.getUuid(userID) + " instead of " + model.get(userID));
+            assertEquals(message, model.containsKey(userID), index.contains(userID));
+        }
+
+        HashSet<String> linkedUuids = new HashSet<>(model.values());
+        for (String uuid : pool) {
+            long userID = index.getUserID(uuid);
+            if (linkedUuids.contains(uuid)) {
+                if (!uuid.equals(model.get(userID)))
+                    fail(message + ": user of " + uuid + " is " + userID + " which has " + model.get(userID));
+            } else
+                assertEquals(message + ": removed uuid " + uuid, 0, userID);
+        }
+
+        assertEquals(message, model.keySet(), new HashSet<>(index.getUserIDs()));
+        List<String> expectedUuids = new ArrayList<>(model.values());
+        List<String> actualUuids = index.getUuids();
+        Collections.sort(expectedUuids);
+        Collections.sort(actualUuids);
+        assertEquals(message, expectedUuids, actualUuids);
+
+        List<String> lines = index.toLines();
+        assertEquals(message, model.size(), lines.size());
+        for (String line : lines) {
+            String[] data = line.split(" ");
+            assertEquals(message, model.get(Long.parseLong(data[0])), data[1]);
+        }
+    }
+}